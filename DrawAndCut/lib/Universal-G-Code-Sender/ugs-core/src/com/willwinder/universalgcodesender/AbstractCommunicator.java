@@ -28,7 +28,6 @@ import com.willwinder.universalgcodesender.i18n.Localization;
 import com.willwinder.universalgcodesender.listeners.SerialCommunicatorListener;
 import com.willwinder.universalgcodesender.types.GcodeCommand;
 import java.util.ArrayList;
-import javafx.application.Platform;
 
 /**
  *
@@ -156,25 +155,31 @@ public abstract class AbstractCommunicator {
     
     /**
      * A bunch of methods to dispatch listener events with various arguments.
+     * Events are delivered in order on the thread of the controller event
+     * bus, console messages may be dropped when it falls behind.
      */
     static protected void dispatchListenerEvents(final int event, final ArrayList<SerialCommunicatorListener> sclList, final String message) {
-        Platform.runLater(() -> {
+        ControllerEventBus.getDefault().post(() -> {
             if (sclList != null) {
                 for (SerialCommunicatorListener s : sclList) {
                     sendEventToListener(event, s, message, null);
                 }
             }
-        });
+        }, isDroppable(event));
     }
     
     static protected void dispatchListenerEvents(final int event, final ArrayList<SerialCommunicatorListener> sclList, final GcodeCommand command) {
-        Platform.runLater(() -> {
+        ControllerEventBus.getDefault().post(() -> {
             if (sclList != null) {
                 for (SerialCommunicatorListener s : sclList) {
                     sendEventToListener(event, s, null, command);
                 }
             }
-        });
+        }, isDroppable(event));
+    }
+
+    private static boolean isDroppable(int event) {
+        return event == CONSOLE_MESSAGE || event == VERBOSE_CONSOLE_MESSAGE;
     }
 
     static protected void sendEventToListener(int event, SerialCommunicatorListener scl, 
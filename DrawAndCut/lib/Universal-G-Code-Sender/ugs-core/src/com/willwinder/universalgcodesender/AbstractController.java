@@ -157,6 +157,7 @@ public abstract class AbstractController implements SerialCommunicatorListener,
     
     // These abstract objects are initialized in concrete class.
     protected AbstractCommunicator comm;
+    protected int portRate;
     protected GcodeCommandCreator commandCreator;
     
     /**
@@ -179,6 +180,7 @@ public abstract class AbstractController implements SerialCommunicatorListener,
     
     // Added value
     private Boolean isStreaming = false;
+    private volatile boolean streamOpen = false;
     private Boolean paused = false;
     private long streamStart = 0;
     private long streamStop = 0;
@@ -297,6 +299,7 @@ public abstract class AbstractController implements SerialCommunicatorListener,
         
         // No point in checking response, it throws an exception on errors.
         this.commOpen = this.comm.openCommPort(port, portRate);
+        this.portRate = portRate;
         
         if (this.commOpen) {
             this.openCommAfterEvent();
@@ -531,6 +534,62 @@ public abstract class AbstractController implements SerialCommunicatorListener,
             throw e;
         }
     }
+
+    /**
+     * Starts a stream which is fed with {@link #appendStreamingCommand}
+     * while it runs. The stream completes after {@link #endStreaming} once
+     * every appended command is done.
+     * @throws java.lang.Exception
+     */
+    public void beginOpenStreaming() throws Exception {
+        this.isReadyToStreamFile();
+
+        synchronized (this) {
+            this.streamOpen = true;
+            this.isStreaming = true;
+            this.streamStop = 0;
+            this.streamStart = System.currentTimeMillis();
+            this.numCommandsStreamed = 0;
+            this.numCommandsSent = 0;
+            this.numCommandsSkipped = 0;
+            this.numCommandsCompleted = 0;
+        }
+    }
+
+    /**
+     * Adds a command to the open stream, it is sent as soon as the comm
+     * buffer has room for it.
+     * @throws java.lang.Exception
+     */
+    public void appendStreamingCommand(String str) throws Exception {
+        if (!this.streamOpen) {
+            throw new Exception("There is no open stream to append commands to.");
+        }
+        GcodeCommand command = this.commandCreator.createCommand(str);
+        if (command.getCommandString().equals("")) {
+            return;
+        }
+        synchronized (this) {
+            this.commands.add(command);
+            this.outgoingQueueIdx++;
+            this.comm.queueStringForComm(command.getCommandString() + "\n");
+            numCommandsStreamed++;
+        }
+        dispatchCommandQueued(command);
+        // The comm layer calls back commandSent, so it is not called under
+        // this controller's lock.
+        this.comm.streamCommands();
+    }
+
+    /**
+     * No more commands will be appended to the open stream.
+     */
+    public void endStreaming() {
+        this.streamOpen = false;
+        if (this.claimStreamComplete()) {
+            this.fileStreamComplete("queued commands", this.errorCount == 0);
+        }
+    }
     
     @Override
     public void pauseStreaming() throws Exception {
@@ -627,18 +686,21 @@ public abstract class AbstractController implements SerialCommunicatorListener,
     
     @Override
     public void commandSent(String commandSent) {
-        this.sentIdx++;
-        
-        if (this.isStreamingFile()) {
-            this.numCommandsSent++;
-        }
-        
-        GcodeCommand awaitingResponseCommand = this.commands.get(this.awaitingResponseIdx++);
+        GcodeCommand awaitingResponseCommand;
+        synchronized (this) {
+            this.sentIdx++;
+
+            if (this.isStreamingFile()) {
+                this.numCommandsSent++;
+            }
 
-        // Jump over skipped commands
-        while (awaitingResponseCommand.isSkipped()) {
             awaitingResponseCommand = this.commands.get(this.awaitingResponseIdx++);
-            this.sentIdx++;
+
+            // Jump over skipped commands
+            while (awaitingResponseCommand.isSkipped()) {
+                awaitingResponseCommand = this.commands.get(this.awaitingResponseIdx++);
+                this.sentIdx++;
+            }
         }
 
         //GcodeCommand c = this.outgoingQueue.remove();
@@ -665,14 +727,17 @@ public abstract class AbstractController implements SerialCommunicatorListener,
      * Notify controller that the next command has completed with response.
      */
     public void commandComplete(String response) throws UnexpectedCommand {
-        if (this.commands.size() == (this.completedCommandIdx + 1)) {
-            throw new UnexpectedCommand();
-        }
-        
-        GcodeCommand command = this.commands.get(++this.completedCommandIdx);
+        GcodeCommand command;
+        synchronized (this) {
+            if (this.commands.size() == (this.completedCommandIdx + 1)) {
+                throw new UnexpectedCommand();
+            }
 
-        while (command.isSkipped() && (this.completedCommandIdx < this.commands.size())) {
             command = this.commands.get(++this.completedCommandIdx);
+
+            while (command.isSkipped() && (this.completedCommandIdx < this.commands.size())) {
+                command = this.commands.get(++this.completedCommandIdx);
+            }
         }
 
         command.setResponse(response);
@@ -698,7 +763,10 @@ public abstract class AbstractController implements SerialCommunicatorListener,
             
             // Peek to see if the next one is a comment, and skip skipped commands
             while (this.isStreamingFile() && (this.completedCommandIdx + 1) < this.commands.size()) {
-                GcodeCommand next = this.commands.get(this.completedCommandIdx + 1);
+                GcodeCommand next;
+                synchronized (this) {
+                    next = this.commands.get(this.completedCommandIdx + 1);
+                }
                 if (next != null) {
                     if (next.hasComment()) {
                         dispatchCommandCommment(next.getComment());
@@ -719,9 +787,7 @@ public abstract class AbstractController implements SerialCommunicatorListener,
         
         dispatchCommandComplete(c);
         
-        if (this.isStreamingFile() &&
-                this.commands.size() <= this.outgoingQueueIdx &&
-                this.completedCommandIdx == (this.commands.size() - 1)) {
+        if (this.claimStreamComplete()) {
             String streamName = "queued commands";
             if (this.gcodeFile != null) {
                 streamName = this.gcodeFile.getName();
@@ -732,6 +798,20 @@ public abstract class AbstractController implements SerialCommunicatorListener,
         }
     }
 
+    /**
+     * Whether every command of a stream which takes no more commands is
+     * done, true only once per stream.
+     */
+    private synchronized boolean claimStreamComplete() {
+        if (this.isStreaming && !this.streamOpen
+                && this.commands.size() <= this.outgoingQueueIdx
+                && this.completedCommandIdx == (this.commands.size() - 1)) {
+            this.isStreaming = false;
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public void messageForConsole(String msg) {
         dispatchConsoleMessage(msg, Boolean.FALSE);
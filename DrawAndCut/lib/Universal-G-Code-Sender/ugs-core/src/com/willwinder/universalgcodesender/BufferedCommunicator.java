@@ -33,7 +33,7 @@ import java.util.concurrent.LinkedBlockingDeque;
 public abstract class BufferedCommunicator extends AbstractCommunicator {// extends AbstractSerialCommunicator {
     
     // Command streaming variables
-    private Boolean sendPaused = false;
+    private volatile boolean sendPaused = false;
     private LinkedBlockingDeque<String> commandBuffer;     // All commands in a file
     private LinkedBlockingDeque<String> activeStringList;  // Currently running commands
     private int sentBufferSize = 0;
@@ -102,19 +102,30 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {// exte
     
     // Helper for determining if commands should be throttled.
     private boolean allowMoreCommands() {
-        if (this.singleStepModeEnabled) {
+        if (this.singleStepModeEnabled || isSystemCommand(this.commandBuffer.peek())
+                || isSystemCommand(this.activeStringList.peekLast())) {
             if (this.areActiveCommands()) {
                 return false;
             }
         }
         return true;
     }
+
+    /**
+     * GRBL runs system commands only when all the commands before them
+     * are done, and they have to be done before any other command is sent.
+     */
+    private static boolean isSystemCommand(String command) {
+        return command != null && command.startsWith("$");
+    }
     
     /**
-     * Streams anything in the command buffer to the comm port.
+     * Streams anything in the command buffer to the comm port. Synchronized
+     * because commands of an open stream are appended from another thread
+     * than the one receiving responses.
      */
     @Override
-    public void streamCommands() {
+    public synchronized void streamCommands() {
         if (this.commandBuffer.size() == 0) {
             // NO-OP
             return;
@@ -126,7 +137,8 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {// exte
         }
         
         // Send command if:
-        // There is room in the buffer.
+        // There is room in the buffer, counting every character sent and
+        // not acknowledged yet.
         // AND We are NOT in single step mode.
         // OR  We are in single command mode and there are no active commands.
         while (CommUtils.checkRoomInBuffer(this.sentBufferSize, this.commandBuffer.peek(), this.getBufferSize())
@@ -159,6 +171,9 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {// exte
         this.sendPaused = true;
     }
     
+    /**
+     * Also resumes streaming stopped by an error response.
+     */
     @Override
     public void resumeSend() {
         this.sendPaused = false;
@@ -174,10 +189,11 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {// exte
      * This is to allow the GRBL Ctrl-C soft reset command.
      */
     @Override
-    public void softReset() {
+    public synchronized void softReset() {
         this.commandBuffer.clear();
         this.activeStringList.clear();
         this.sentBufferSize = 0;
+        this.sendPaused = false;
     }
 
     /**
@@ -205,9 +221,7 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {// exte
         // Keep the data flow going in case of an "ok/error".
         if (processedCommand(response)) {
             // Pop the front of the active list.
-            if (this.activeStringList != null && this.activeStringList.size() > 0) {
-                String commandString = this.activeStringList.pop();
-                this.sentBufferSize -= commandString.length();
+            if (popActiveCommand(response)) {
 
                 // Send this information back up to the Controller.
                 dispatchListenerEvents(RAW_RESPONSE, this.commRawResponseListener, response);
@@ -223,6 +237,28 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {// exte
         }
     }
 
+    /**
+     * Frees the room of the oldest command in the buffer. GRBL has 
+     * discarded a command it answers with an error, but the commands sent
+     * after it are already buffered and would run out of context, so the
+     * stream is paused until the controller cancels or resumes it.
+     * 
+     * @return false if no command was waiting for the response
+     */
+    private synchronized boolean popActiveCommand(String response) {
+        if (this.activeStringList == null || this.activeStringList.isEmpty()) {
+            return false;
+        }
+        String commandString = this.activeStringList.pop();
+        this.sentBufferSize -= commandString.length();
+        if (response.toLowerCase().startsWith("error")) {
+            this.sendPaused = true;
+            this.sendMessageToConsoleListener("Streaming paused, GRBL rejected " 
+                    + commandString.trim() + "\n");
+        }
+        return true;
+    }
+
     @Override
     public boolean openCommPort(String name, int baud) throws Exception {
         boolean ret = super.openCommPort(name, baud);
@@ -0,0 +1,168 @@
+/*
+ * Delivers controller events off the serial and FX threads.
+ */
+
+/*
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.application.Platform;
+
+/**
+ * Runs communicator and controller events in order on a thread of their
+ * own, taking all the events queued so far in one batch. Events that only
+ * inform, like console messages, are dropped when the queue is long, the
+ * others are always queued: no response may be lost and a listener on
+ * the bus thread posting events must not wait for itself.
+ * <p>
+ * Consumers on the FX thread should not get every event: a 
+ * {@link #snapshot(Consumer) snapshot} passes them only the latest value,
+ * at most once per pulse.
+ *
+ * @author akouznet
+ */
+public class ControllerEventBus {
+
+    private static final int DROP_DEPTH = 4096;
+    private static final int MAX_BATCH = 256;
+    private static final ControllerEventBus DEFAULT = new ControllerEventBus("Controller events");
+
+    private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong posted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    public ControllerEventBus(String name) {
+        Thread thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * The bus shared by all communicators.
+     */
+    public static ControllerEventBus getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Queues the event unless it may be dropped and the queue is long.
+     */
+    public void post(Runnable event, boolean droppable) {
+        posted.incrementAndGet();
+        if (droppable && queue.size() >= DROP_DEPTH) {
+            dropped.incrementAndGet();
+            return;
+        }
+        queue.add(event);
+        maxQueueDepth.accumulateAndGet(queue.size(), Math::max);
+    }
+
+    /**
+     * Returns a consumer that may be fed from any thread and passes the 
+     * latest value it was given to the FX thread consumer. Values given 
+     * before the FX thread gets to it are skipped.
+     */
+    public <T> Consumer<T> snapshot(Consumer<T> fxConsumer) {
+        AtomicReference<T> latest = new AtomicReference<>();
+        AtomicBoolean scheduled = new AtomicBoolean();
+        return value -> {
+            if (latest.getAndSet(value) != null) {
+                coalesced.incrementAndGet();
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                Platform.runLater(() -> {
+                    scheduled.set(false);
+                    T current = latest.getAndSet(null);
+                    if (current != null) {
+                        fxConsumer.accept(current);
+                    }
+                });
+            }
+        };
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public long getPosted() {
+        return posted.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * @return snapshot values skipped because a newer one came before the
+     * FX thread took them
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d events in %d batches, queue depth %d (max %d), "
+                + "%d dropped, %d snapshots coalesced", getPosted(), getBatches(), 
+                getQueueDepth(), getMaxQueueDepth(), getDropped(), getCoalesced());
+    }
+
+    private void run() {
+        List<Runnable> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException ex) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            batches.incrementAndGet();
+            for (Runnable event : batch) {
+                try {
+                    event.run();
+                } catch (RuntimeException ex) {
+                    Logger.getLogger(ControllerEventBus.class.getName())
+                            .log(Level.SEVERE, null, ex);
+                }
+            }
+            batch.clear();
+        }
+    }
+}
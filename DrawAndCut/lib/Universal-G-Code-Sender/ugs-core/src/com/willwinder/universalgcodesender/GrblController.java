@@ -26,13 +26,14 @@ import com.willwinder.universalgcodesender.i18n.Localization;
 import com.willwinder.universalgcodesender.listeners.GrblSettingsListener;
 import com.willwinder.universalgcodesender.model.Utils.Units;
 import com.willwinder.universalgcodesender.types.GcodeCommand;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import com.willwinder.universalgcodesender.types.GrblStatus;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javafx.application.Platform;
-import javax.swing.Timer;
 import javax.vecmath.Point3d;
 
 /**
@@ -49,21 +50,28 @@ public class GrblController extends AbstractController {
     // Grbl status members.
     private GrblUtils.Capabilities positionMode = null;
     private Boolean realTimeCapable = false;
-    private String grblState;
+    private volatile String grblState;
     private Point3d machineLocation;
     private Point3d workLocation;
     private double maxZLocationMM;
     private Units units;
+    private final GrblStatus status = new GrblStatus();
     
     // Polling state
-    private int outstandingPolls = 0;
-    private Timer positionPollTimer = null;  
+    private static final ScheduledExecutorService POLLER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "GRBL status poller");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final int IDLE_POLL_INTERVAL = 1000; // ms
+    private final AtomicInteger outstandingPolls = new AtomicInteger();
+    private volatile Object positionPolling = null; // a new one each time polling begins
+    private volatile boolean homing = false;
     
     public GrblController(AbstractCommunicator comm) {
         super(comm);
         
         this.commandCreator = new GcodeCommandCreator();
-        this.positionPollTimer = createPositionPollTimer();
         this.maxZLocationMM = -1;
         this.settings = new GrblSettingsListener(this);
     }
@@ -72,12 +80,26 @@ public class GrblController extends AbstractController {
         this(new GrblCommunicator()); //f4grx: connection created at opencomm() time
     }
 
+    // Time between sending a line and being allowed to send the next one 
+    // in single step mode, i.e. the round trip of its ok.
+    private static final double SINGLE_STEP_LATENCY = 0.01; // s
+
     @Override
     public long getJobLengthEstimate(Collection<String> jobLines) {
-        // Pending update to support cross-platform and multiple GRBL versions.
-        return 0;
-        //GrblSimulator simulator = new GrblSimulator(settings.getSettings());
-        //return simulator.estimateRunLength(jobLines);
+        return createSimulator().estimateRunLength(jobLines);
+    }
+
+    /**
+     * Estimator configured with the last settings reported by GRBL and the
+     * current streaming mode. Doesn't query GRBL.
+     */
+    public GrblKinematicSimulator createSimulator() {
+        GrblKinematicSimulator simulator = new GrblKinematicSimulator(settings.getCachedSettings());
+        if (portRate > 0) {
+            simulator.setStreaming(portRate / 10., 
+                    getSingleStepMode() ? SINGLE_STEP_LATENCY : 0);
+        }
+        return simulator;
     }
 
     /***********************
@@ -88,6 +110,8 @@ public class GrblController extends AbstractController {
     @Override
     protected void rawResponseHandler(String response) {
         if (GcodeCommand.isOkErrorResponse(response)) {            
+            // Homing is a system command, nothing else is sent with it.
+            this.homing = false;
             try {
                 this.commandComplete(response);
             } catch (Exception e) {
@@ -119,7 +143,7 @@ public class GrblController extends AbstractController {
         
         else if (GrblUtils.isGrblStatusString(response)) {
             // Only 1 poll is sent at a time so don't decrement, reset to zero.
-            this.outstandingPolls = 0;
+            this.outstandingPolls.set(0);
 
             // Status string goes to verbose console
             verboseMessageForConsole(response + "\n");
@@ -201,6 +225,8 @@ public class GrblController extends AbstractController {
         if (this.isCommOpen()) {
             String command = GrblUtils.getHomingCommand(this.grblVersion, this.grblVersionLetter);
             if (!"".equals(command)) {
+                // GRBL doesn't answer status requests until it is homed
+                this.homing = true;
                 this.sendCommandImmediately(command);
                 return;
             }
@@ -337,69 +363,74 @@ public class GrblController extends AbstractController {
     }
 
     /**
-     * Create a timer which will execute GRBL's position polling mechanism.
+     * Requests a status report unless one is still outstanding, then 
+     * schedules the next request. The machine is polled at the status 
+     * update rate while it moves, probes or runs a job and at most once a 
+     * second when it is idle, not at all while it is homing. Runs on the 
+     * poller thread and writes the request straight to the port.
      */
-    private Timer createPositionPollTimer() {
-        // Action Listener for GRBL's polling mechanism.
-        ActionListener actionListener = new ActionListener() {
-            @Override
-            public void actionPerformed(ActionEvent actionEvent) {
-                Platform.runLater(() -> {
-                    try {
-                        if (outstandingPolls == 0) {
-                            outstandingPolls++;
-                            comm.sendByteImmediately(GrblUtils.GRBL_STATUS_COMMAND);
-                        } else {
-                            // If a poll is somehow lost after 20 intervals,
-                            // reset for sending another.
-                            outstandingPolls++;
-                            if (outstandingPolls >= 20) {
-                                outstandingPolls = 0;
-                            }
-                        }
-                    } catch (Exception ex) {
-                        messageForConsole(Localization.getString("controller.exception.sendingstatus")
-                                + ": " + ex.getMessage() + "\n");
-                    }
-                });
-                
+    private void pollPosition(Object polling) {
+        if (positionPolling != polling) {
+            return;
+        }
+        if (!homing) {
+            try {
+                if (outstandingPolls.getAndIncrement() == 0) {
+                    comm.sendByteImmediately(GrblUtils.GRBL_STATUS_COMMAND);
+                } else {
+                    // If a poll is somehow lost after 20 intervals,
+                    // reset for sending another.
+                    outstandingPolls.compareAndSet(20, 0);
+                }
+            } catch (Exception ex) {
+                messageForConsole(Localization.getString("controller.exception.sendingstatus")
+                        + ": " + ex.getMessage() + "\n");
             }
-        };
-        
-        return new Timer(this.getStatusUpdateRate(), actionListener);
+        }
+        String state = grblState;
+        boolean moving = isStreamingFile() || comm.areActiveCommands()
+                || (state != null && !"Idle".equals(state) && !"Alarm".equals(state));
+        int interval = moving ? getStatusUpdateRate() 
+                : Math.max(getStatusUpdateRate(), IDLE_POLL_INTERVAL);
+        POLLER.schedule(() -> pollPosition(polling), interval, TimeUnit.MILLISECONDS);
     }
+
     /**
      * Begin issuing GRBL status request commands.
      */
     private void beginPollingPosition() {
         // Start sending '?' commands if supported and enabled.
         if (this.positionMode != null && this.getStatusUpdatesEnabled()) {
-            if (this.positionPollTimer.isRunning() == false) {
-                this.outstandingPolls = 0;
-                this.positionPollTimer.start();
+            if (this.positionPolling == null) {
+                this.outstandingPolls.set(0);
+                Object polling = new Object();
+                this.positionPolling = polling;
+                POLLER.execute(() -> pollPosition(polling));
             }
         }
     }
 
     /**
-     * Stop issuing GRBL status request commands.
+     * Stop issuing GRBL status request commands. A poll already scheduled
+     * finds out and does nothing.
      */
     private void stopPollingPosition() {
-        if (this.positionPollTimer.isRunning()) {
-            this.positionPollTimer.stop();
-        }
+        this.positionPolling = null;
     }
     
     // No longer a listener event
     private void handlePositionString(final String string) {
-        if (this.positionMode != null) {
-            grblState = GrblUtils.getStateFromStatusString(string, positionMode);
-            machineLocation = GrblUtils.getMachinePositionFromStatusString(string, positionMode);
-            workLocation = GrblUtils.getWorkPositionFromStatusString(string, positionMode);
+        if (this.positionMode != null && status.parse(string)) {
+            grblState = status.getState();
+            // Listeners may keep the points, so they're new for each report.
+            machineLocation = !status.hasMachinePosition() ? null : new Point3d(
+                    status.getMachineX(), status.getMachineY(), status.getMachineZ());
+            workLocation = !status.hasWorkPosition() ? null : new Point3d(
+                    status.getWorkX(), status.getWorkY(), status.getWorkZ());
             
             // Save max Z location
             if (machineLocation != null) {
-                Units u = GrblUtils.getUnitsFromStatusString(string, positionMode);
+                Units u = status.getUnits();
                 double zLocationMM = machineLocation.z;
                 if (u == Units.INCH)
                     zLocationMM *= 26.4;
@@ -425,9 +456,8 @@ public class GrblController extends AbstractController {
     @Override
     protected void statusUpdatesRateValueChanged(int rate) {
         this.stopPollingPosition();
-        this.positionPollTimer = this.createPositionPollTimer();
         
-        // This will start the timer up again if it is supported and enabled.
+        // This will start polling again if it is supported and enabled.
         this.beginPollingPosition();
     }
 
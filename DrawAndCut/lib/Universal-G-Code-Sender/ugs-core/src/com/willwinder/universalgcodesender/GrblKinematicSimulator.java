@@ -0,0 +1,301 @@
+/*
+ * In-process GRBL motion planner model for job length estimates.
+ */
+
+/*
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
+import com.willwinder.universalgcodesender.types.PointSegment;
+import com.willwinder.universalgcodesender.types.Simulator;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.vecmath.Point3d;
+
+/**
+ * Estimates how long GRBL takes to run a job without a simulator process.
+ * Commands are replayed through {@link GcodeParser}, arcs are split into 
+ * chords the way GRBL does it, and the resulting blocks are planned with 
+ * per-axis max rates and accelerations, junction deviation and a limited 
+ * look-ahead of {@link #getPlannerBlocks()} blocks. Settings are taken from
+ * the {@code $$} output (GRBL 0.9 and later numbering), missing ones keep 
+ * GRBL defaults.
+ * 
+ * Commands may be added one by one with {@link #addCommand(String)} while
+ * a job is generated and {@link #estimate()} called at the end.
+ *
+ * @author akouznet
+ */
+public class GrblKinematicSimulator extends Simulator {
+
+    private static final Pattern SETTING = Pattern.compile("^\\$(\\d+)=([-+]?[0-9]*\\.?[0-9]+)");
+    private static final double MM_PER_INCH = 25.4;
+    private static final double EPSILON = 1e-9;
+
+    // Settings, mm/s and mm/s^2
+    private final double[] maxRate = {500 / 60., 500 / 60., 500 / 60.};
+    private final double[] acceleration = {10, 10, 10};
+    private double junctionDeviation = 0.01; // mm
+    private double arcTolerance = 0.002; // mm
+    private int plannerBlocks = 16;
+    private double bytesPerSecond = 115200 / 10.;
+    private double lineLatency = 0; // s
+
+    // Blocks
+    private int count;
+    private double[] length = new double[1024];
+    private double[] nominal2 = new double[1024];
+    private double[] accel = new double[1024];
+    private double[] maxEntry2 = new double[1024];
+    private double[] nominal = new double[1024];
+    private double[] arrival = new double[1024];
+
+    // Parser state
+    private final GcodeParser parser = new GcodeParser();
+    private double x, y, z;
+    private double feed = Double.NaN; // mm/s
+    private double ux, uy, uz; // direction of the last block
+    private boolean stopped = true;
+    private double sent; // s, serial transfer time so far
+
+    public GrblKinematicSimulator() {
+    }
+
+    public GrblKinematicSimulator(Collection<String> configurationCommands) {
+        super(configurationCommands);
+        for (String setting : configurationCommands) {
+            applySetting(setting);
+        }
+    }
+
+    private void applySetting(String setting) {
+        Matcher m = SETTING.matcher(setting.trim());
+        if (!m.find()) {
+            return;
+        }
+        int number = Integer.parseInt(m.group(1));
+        double value = Double.parseDouble(m.group(2));
+        if (number >= 110 && number <= 112 && value > 0) {
+            maxRate[number - 110] = value / 60;
+        } else if (number >= 120 && number <= 122 && value > 0) {
+            acceleration[number - 120] = value;
+        } else if (number == 11) {
+            junctionDeviation = value;
+        } else if (number == 12 && value > 0) {
+            arcTolerance = value;
+        }
+    }
+
+    public int getPlannerBlocks() {
+        return plannerBlocks;
+    }
+
+    /**
+     * Blocks GRBL plans ahead, 1 when every move has to stop.
+     */
+    public void setPlannerBlocks(int plannerBlocks) {
+        this.plannerBlocks = Math.max(1, plannerBlocks);
+    }
+
+    /**
+     * @param bytesPerSecond serial throughput
+     * @param lineLatency seconds each line waits before the next one may be
+     * sent, e.g. the round trip of an ok in single step mode
+     */
+    public void setStreaming(double bytesPerSecond, double lineLatency) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.lineLatency = lineLatency;
+    }
+
+    @Override
+    public long estimateRunLength(Collection<String> commands) {
+        for (String command : commands) {
+            addCommand(command);
+        }
+        return estimate();
+    }
+
+    public void addCommand(String command) {
+        sent += (command.length() + 1) / bytesPerSecond + lineLatency;
+        String trimmed = command.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("$")) {
+            // System commands, e.g. homing, run on their own
+            stopped = true;
+            return;
+        }
+        List<String> args = GcodePreprocessorUtils.splitCommand(
+                GcodePreprocessorUtils.removeComment(trimmed));
+        double f = GcodePreprocessorUtils.parseCoord(args, 'F');
+        List<String> gCodes = GcodePreprocessorUtils.parseCodes(args, 'G');
+        if (!GcodePreprocessorUtils.parseCodes(args, 'M').isEmpty() 
+                || gCodes.contains("4") || gCodes.contains("04")) {
+            // GRBL finishes the buffered motion before these
+            stopped = true;
+        }
+        PointSegment ps = parser.addCommand(args);
+        double scale = ps != null && !ps.isMetric() ? MM_PER_INCH : 1;
+        if (!Double.isNaN(f)) {
+            feed = f * scale / 60;
+        }
+        if (ps == null) {
+            return;
+        }
+        Point3d p = ps.point();
+        double nx = p.x * scale, ny = p.y * scale, nz = p.z * scale;
+        double rate = ps.isFastTraverse() ? Double.POSITIVE_INFINITY : feed;
+        if (ps.isArc()) {
+            addArc(nx, ny, nz, ps.center().x * scale, ps.center().y * scale, 
+                    ps.isClockwise(), rate);
+        } else {
+            addBlock(nx - x, ny - y, nz - z, rate);
+        }
+        x = nx;
+        y = ny;
+        z = nz;
+        // Parser keeps every segment, the estimate only needs the last point
+        parser.getPointSegmentList().clear();
+    }
+
+    private void addArc(double nx, double ny, double nz, double cx, double cy, 
+            boolean clockwise, double rate) {
+        double rx = x - cx, ry = y - cy;
+        double tx = nx - cx, ty = ny - cy;
+        double radius = Math.hypot(rx, ry);
+        double travel = Math.atan2(rx * ty - ry * tx, rx * tx + ry * ty);
+        if (clockwise) {
+            if (travel >= -EPSILON) {
+                travel -= 2 * Math.PI;
+            }
+        } else if (travel <= EPSILON) {
+            travel += 2 * Math.PI;
+        }
+        int segments = (int) Math.floor(Math.abs(0.5 * travel * radius)
+                / Math.sqrt(arcTolerance * (2 * radius - arcTolerance)));
+        segments = Math.max(1, segments);
+        double dz = (nz - z) / segments;
+        double px = x, py = y;
+        for (int i = 1; i <= segments; i++) {
+            double a = travel * i / segments;
+            double sx = i == segments ? nx : cx + rx * Math.cos(a) - ry * Math.sin(a);
+            double sy = i == segments ? ny : cy + rx * Math.sin(a) + ry * Math.cos(a);
+            addBlock(sx - px, sy - py, dz, rate);
+            px = sx;
+            py = sy;
+        }
+    }
+
+    private void addBlock(double dx, double dy, double dz, double rate) {
+        double l = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (l < EPSILON) {
+            return;
+        }
+        if (count == length.length) {
+            int size = count * 2;
+            length = Arrays.copyOf(length, size);
+            nominal2 = Arrays.copyOf(nominal2, size);
+            accel = Arrays.copyOf(accel, size);
+            maxEntry2 = Arrays.copyOf(maxEntry2, size);
+            nominal = Arrays.copyOf(nominal, size);
+            arrival = Arrays.copyOf(arrival, size);
+        }
+        double vx = dx / l, vy = dy / l, vz = dz / l;
+        double v = Double.isNaN(rate) ? maxRate[0] : rate;
+        double a = Double.POSITIVE_INFINITY;
+        double[] u = {vx, vy, vz};
+        for (int axis = 0; axis < 3; axis++) {
+            double component = Math.abs(u[axis]);
+            if (component > EPSILON) {
+                v = Math.min(v, maxRate[axis] / component);
+                a = Math.min(a, acceleration[axis] / component);
+            }
+        }
+        double entry2 = 0;
+        if (!stopped && count > 0) {
+            double cosTheta = -(ux * vx + uy * vy + uz * vz);
+            if (cosTheta < 0.999999) {
+                cosTheta = Math.max(cosTheta, -0.999999);
+                double sinThetaD2 = Math.sqrt(0.5 * (1 - cosTheta));
+                entry2 = a * junctionDeviation * sinThetaD2 / (1 - sinThetaD2);
+            }
+            entry2 = Math.min(entry2, Math.min(nominal2[count - 1], v * v));
+        }
+        length[count] = l;
+        nominal[count] = v;
+        nominal2[count] = v * v;
+        accel[count] = a;
+        maxEntry2[count] = entry2;
+        arrival[count] = sent;
+        count++;
+        ux = vx;
+        uy = vy;
+        uz = vz;
+        stopped = false;
+    }
+
+    /**
+     * Milliseconds to run the commands added so far.
+     */
+    public long estimate() {
+        int n = count;
+        double[] entry2 = Arrays.copyOf(maxEntry2, n + 1);
+        entry2[n] = 0;
+        // Look-ahead: a block is entered while the blocks buffered behind it
+        // can still bring the machine to rest
+        int span = plannerBlocks - 1;
+        double window = 0;
+        for (int i = n - 1; i >= 0; i--) {
+            window += length[i];
+            if (i + span < n) {
+                window -= length[i + span];
+            }
+            entry2[i] = Math.min(entry2[i], 2 * accel[i] * Math.max(0, window));
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            entry2[i] = Math.min(entry2[i], entry2[i + 1] + 2 * accel[i] * length[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            entry2[i + 1] = Math.min(entry2[i + 1], entry2[i] + 2 * accel[i] * length[i]);
+        }
+        double time = 0;
+        for (int i = 0; i < n; i++) {
+            time = Math.max(time, arrival[i]) + blockTime(i, entry2[i], entry2[i + 1]);
+        }
+        return Math.round(time * 1000);
+    }
+
+    /**
+     * Trapezoid, or triangle when the nominal speed is not reached.
+     */
+    private double blockTime(int i, double entry2, double exit2) {
+        double a = accel[i];
+        double l = length[i];
+        double accelerate = (nominal2[i] - entry2) / (2 * a);
+        double decelerate = (nominal2[i] - exit2) / (2 * a);
+        double v0 = Math.sqrt(entry2), v1 = Math.sqrt(exit2);
+        if (accelerate + decelerate <= l) {
+            return (nominal[i] - v0) / a + (nominal[i] - v1) / a
+                    + (l - accelerate - decelerate) / nominal[i];
+        }
+        double peak = Math.sqrt((2 * a * l + entry2 + exit2) / 2);
+        return (peak - v0) / a + (peak - v1) / a;
+    }
+}
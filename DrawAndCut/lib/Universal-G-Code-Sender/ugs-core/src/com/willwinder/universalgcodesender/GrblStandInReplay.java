@@ -0,0 +1,124 @@
+/*
+ * Replays a program through the GRBL stand-in without the UI or a board.
+ */
+
+/*
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender;
+
+import com.willwinder.universalgcodesender.connection.GrblStandInConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams a program through {@link GrblStandInConnection} in single step
+ * mode and by character counting, and prints how long each took and how
+ * often the planner ran empty. Exits with status 1 when a line overflowed
+ * the receive buffer of the stand-in or the stream stalled, so it can gate
+ * changes to the streaming code.
+ *
+ * @author akouznet
+ */
+public class GrblStandInReplay {
+
+    private static final int BAUD_RATE = 115200;
+    private static final long POLL = 5; // ms
+    private static final long STALL = TimeUnit.SECONDS.toNanos(60);
+
+    private final List<String> program;
+    private final double timeScale;
+
+    public GrblStandInReplay(List<String> program, double timeScale) {
+        this.program = program;
+        this.timeScale = timeScale;
+    }
+
+    /**
+     * @return false if a line overflowed the receive buffer or the stream
+     * stalled
+     */
+    public boolean replay(boolean singleStep) throws Exception {
+        GrblStandInConnection connection = new GrblStandInConnection(
+                TimeUnit.MILLISECONDS.toNanos(1), timeScale);
+        GrblCommunicator communicator = new GrblCommunicator(
+                new LinkedBlockingDeque<>(), new LinkedBlockingDeque<>(), connection);
+        communicator.setSingleStepMode(singleStep);
+        connection.openPort(GrblStandInConnection.PORT_NAME, BAUD_RATE);
+        try {
+            long start = System.nanoTime();
+            for (String line : program) {
+                communicator.queueStringForComm(line);
+            }
+            communicator.streamCommands();
+            boolean stalled = false;
+            double done = -1;
+            long progress = start;
+            while (connection.getLines() < program.size() 
+                    || communicator.areActiveCommands() || !connection.isIdle()) {
+                Thread.sleep(POLL);
+                long now = System.nanoTime();
+                // Lines are acknowledged or moves are completed
+                double state = connection.getLines() + connection.getMotionTime();
+                if (state != done) {
+                    done = state;
+                    progress = now;
+                } else if (now - progress > STALL) {
+                    stalled = true;
+                    break;
+                }
+            }
+            double time = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-18s %d lines in %.2f s, motion %.2f s, "
+                    + "%d underruns waiting %.2f s, %d overflows%s\n",
+                    singleStep ? "Single step:" : "Character counting:",
+                    connection.getLines(), time, connection.getMotionTime(),
+                    connection.getUnderruns(), connection.getStarvedTime(),
+                    connection.getOverflows(), stalled ? ", stalled" : "");
+            return connection.getOverflows() == 0 && !stalled;
+        } finally {
+            connection.closePort();
+        }
+    }
+
+    /**
+     * Replays the program given as the first argument in both modes. With a
+     * time scale less than one moves take that fraction of their time, so 
+     * long programs finish sooner, but the serial transfer is not scaled.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: GrblStandInReplay <program.nc> [time scale]");
+            System.exit(2);
+        }
+        List<String> program = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(args[0]), StandardCharsets.US_ASCII)) {
+            if (!line.trim().isEmpty()) {
+                program.add(line.trim());
+            }
+        }
+        GrblStandInReplay replay = new GrblStandInReplay(program, 
+                args.length > 1 ? Double.parseDouble(args[1]) : 1);
+        boolean passed = replay.replay(true);
+        passed &= replay.replay(false);
+        System.exit(passed ? 0 : 1);
+    }
+}
@@ -24,6 +24,7 @@
 package com.willwinder.universalgcodesender;
 
 import com.willwinder.universalgcodesender.model.Utils.Units;
+import com.willwinder.universalgcodesender.types.GrblStatus;
 import java.util.ArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -242,81 +243,54 @@ public class GrblUtils {
      * Check if a string contains a GRBL position string.
      */
     static protected Boolean isGrblStatusString(final String response) {
-        double retValue = -1;
-        final String REGEX = "\\<.*\\>";
-        
-        // Search for a version.
-        Pattern pattern = Pattern.compile(REGEX);
-        Matcher matcher = pattern.matcher(response);
-        if (matcher.find()) {
-            return true;
-        }
-        return false;
+        return GrblStatus.isStatusReport(response);
     }
     
     /**
      * Parse state out of position string.
      */
     static protected String getStateFromStatusString(final String status, final Capabilities version) {
-        String retValue = null;
-        String REGEX;
-        
         if (version == Capabilities.STATUS_C) {
-            REGEX = "(?<=\\<)[a-zA-z]*(?=[,])";
-        } else {
-            return null;
+            return parseStatusString(status).getState();
         }
-        
-        
-        // Search for a version.
-        Pattern pattern = Pattern.compile(REGEX);
-        Matcher matcher = pattern.matcher(status);
-        if (matcher.find()) {
-            retValue = matcher.group(0);;
-        }
-
-        return retValue;
+        return null;
     }
     
-    static Pattern mmPattern = Pattern.compile(".*:\\d+\\.\\d\\d\\d,.*");
     static protected Units getUnitsFromStatusString(final String status, final Capabilities version) {
         if (version == Capabilities.STATUS_C) {
-            if (mmPattern.matcher(status).find()) {
-                return Units.MM;
-            } else {
-                return Units.INCH;
-            }
+            Units units = parseStatusString(status).getUnits();
+            return units == Units.MM ? Units.MM : Units.INCH;
         }
         
         return Units.UNKNOWN;
     }
 
-    static Pattern machinePattern = Pattern.compile("(?<=MPos:)(-?\\d*\\..\\d*),(-?\\d*\\..\\d*),(-?\\d*\\..\\d*)(?=,WPos:)");
     static protected Point3d getMachinePositionFromStatusString(final String status, final Capabilities version) {
         if (version == Capabilities.STATUS_C) {
-            return GrblUtils.getPositionFromStatusString(status, machinePattern);
-        } else {
-            return null;
+            GrblStatus s = parseStatusString(status);
+            if (s.hasMachinePosition()) {
+                return new Point3d(s.getMachineX(), s.getMachineY(), s.getMachineZ());
+            }
         }
+        return null;
     }
     
-    static Pattern workPattern = Pattern.compile("(?<=WPos:)(\\-?\\d*\\..\\d*),(\\-?\\d*\\..\\d*),(\\-?\\d*\\..\\d*)");
     static protected Point3d getWorkPositionFromStatusString(final String status, final Capabilities version) {
         if (version == Capabilities.STATUS_C) {
-            return GrblUtils.getPositionFromStatusString(status, workPattern);
-        } else {
-            return null;
+            GrblStatus s = parseStatusString(status);
+            if (s.hasWorkPosition()) {
+                return new Point3d(s.getWorkX(), s.getWorkY(), s.getWorkZ());
+            }
         }
+        return null;
     }
     
-    static private Point3d getPositionFromStatusString(final String status, final Pattern pattern) {
-        Matcher matcher = pattern.matcher(status);
-        if (matcher.find()) {
-            return new Point3d( Double.parseDouble(matcher.group(1)),
-                                Double.parseDouble(matcher.group(2)),
-                                Double.parseDouble(matcher.group(3)));
-        }
-        
-        return null;
+    /**
+     * One off parse, the controller reuses a GrblStatus instead.
+     */
+    static private GrblStatus parseStatusString(final String status) {
+        GrblStatus s = new GrblStatus();
+        s.parse(status);
+        return s;
     }
 }
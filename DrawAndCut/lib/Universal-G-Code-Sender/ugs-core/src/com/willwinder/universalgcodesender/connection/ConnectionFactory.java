@@ -24,6 +24,9 @@ package com.willwinder.universalgcodesender.connection;
  */
 public class ConnectionFactory {
     static public Connection getConnectionFor(String address, int baud) {
+        if (GrblStandInConnection.PORT_NAME.equals(address)) {
+            return new GrblStandInConnection();
+        }
         return new JSSCConnection();
         
         /*
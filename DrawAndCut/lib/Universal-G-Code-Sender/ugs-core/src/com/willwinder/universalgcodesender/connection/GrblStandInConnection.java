@@ -0,0 +1,451 @@
+/*
+ * Stand-in for a GRBL board to measure streaming without hardware.
+ */
+
+/*
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.connection;
+
+import com.willwinder.universalgcodesender.GrblUtils;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Behaves like GRBL 0.9 behind a USB serial port, in real time: lines 
+ * arrive after the serial transfer and a latency, wait in a 128 byte 
+ * receive buffer, are acknowledged with ok when they enter a planner of 
+ * 16 blocks and take the time of their move at the programmed feed. 
+ * Acceleration and the kinematics of arcs are not modelled, an arc takes
+ * the time of its chord. Distances are absolute, coordinate systems are
+ * ignored and work positions are reported equal to machine positions.
+ * <p>
+ * Receive buffer overflows, i.e. lines the real board would corrupt, and
+ * planner underruns are counted, so streaming protocols can be compared
+ * and regression tested. Opened by the port name {@value #PORT_NAME}.
+ *
+ * @author akouznet
+ */
+public class GrblStandInConnection extends Connection {
+
+    public static final String PORT_NAME = "standin";
+    private static final String WELCOME = "Grbl 0.9j ['$' for help]";
+    private static final int RX_BUFFER_SIZE = 128;
+    private static final int PLANNER_BLOCKS = 16;
+    private static final double RAPID_RATE = 500; // mm/min, GRBL default
+    private static final long MAX_PARK = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final long latency;
+    private final double timeScale;
+    private double bytesPerSecond;
+    private int rejectLine;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Event> arrivals = new ArrayDeque<>();
+    private final ArrayDeque<String> rx = new ArrayDeque<>();
+    private int rxBytes;
+    private final ArrayDeque<Block> planner = new ArrayDeque<>();
+    private long blockEnd;
+    private final ArrayDeque<Event> responses = new ArrayDeque<>();
+    private boolean hold;
+    private volatile Thread machine;
+
+    // Parser state, mm
+    private int motion;
+    private double feed = RAPID_RATE;
+    private double scale = 1;
+    private double plannedX, plannedY, plannedZ;
+    private double x, y, z;
+
+    // Statistics
+    private int lines, overflows, underruns;
+    private long motionTime, starvedTime, lastBlockEnd;
+
+    /**
+     * One millisecond of latency each way, typical of a USB serial 
+     * adapter, motion in real time.
+     */
+    public GrblStandInConnection() {
+        this(TimeUnit.MILLISECONDS.toNanos(1), 1);
+    }
+
+    /**
+     * @param latency one way latency of the port in nanoseconds
+     * @param timeScale factor of the time moves take, less than one to 
+     * run jobs faster than the machine would
+     */
+    public GrblStandInConnection(long latency, double timeScale) {
+        this.latency = latency;
+        this.timeScale = timeScale;
+    }
+
+    /**
+     * Makes the stand-in answer the line with the given number, counted 
+     * from one since the port was opened, with an error.
+     */
+    public void setRejectLine(int rejectLine) {
+        this.rejectLine = rejectLine;
+    }
+
+    @Override
+    public boolean openPort(String name, int baud) throws Exception {
+        synchronized (lock) {
+            bytesPerSecond = baud / 10.;
+            reset(System.nanoTime());
+        }
+        Thread thread = new Thread(this::run, "GRBL stand-in");
+        thread.setDaemon(true);
+        machine = thread;
+        thread.start();
+        return true;
+    }
+
+    @Override
+    public void closePort() throws Exception {
+        Thread thread = machine;
+        machine = null;
+        if (thread != null) {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+
+    @Override
+    public void sendByteImmediately(byte b) throws Exception {
+        synchronized (lock) {
+            long now = System.nanoTime();
+            switch (b) {
+                case GrblUtils.GRBL_STATUS_COMMAND:
+                    respond(now, String.format(Locale.ROOT, 
+                            "<%s,MPos:%.3f,%.3f,%.3f,WPos:%.3f,%.3f,%.3f>",
+                            hold ? "Hold" : planner.isEmpty() ? "Idle" : "Run",
+                            x, y, z, x, y, z));
+                    break;
+                case GrblUtils.GRBL_PAUSE_COMMAND:
+                    hold = true;
+                    break;
+                case GrblUtils.GRBL_RESUME_COMMAND:
+                    if (hold && !planner.isEmpty()) {
+                        blockEnd = now + planner.peek().duration;
+                    }
+                    hold = false;
+                    break;
+                case GrblUtils.GRBL_RESET_COMMAND:
+                    reset(now);
+                    break;
+            }
+        }
+        LockSupport.unpark(machine);
+    }
+
+    @Override
+    public void sendStringToComm(String command) throws Exception {
+        synchronized (lock) {
+            long now = System.nanoTime();
+            long transfer = (long) (command.length() * 1e9 / bytesPerSecond);
+            Event last = arrivals.peekLast();
+            long arrival = Math.max(now + latency + transfer, 
+                    last == null ? 0 : last.time + transfer);
+            for (String line : command.split("\n")) {
+                arrivals.add(new Event(arrival, line.trim()));
+            }
+        }
+    }
+
+    public int getLines() {
+        synchronized (lock) {
+            return lines;
+        }
+    }
+
+    /**
+     * @return lines that arrived while the receive buffer was full
+     */
+    public int getOverflows() {
+        synchronized (lock) {
+            return overflows;
+        }
+    }
+
+    /**
+     * @return times the planner ran empty and waited for the next line
+     */
+    public int getUnderruns() {
+        synchronized (lock) {
+            return underruns;
+        }
+    }
+
+    /**
+     * @return seconds of moves executed
+     */
+    public double getMotionTime() {
+        synchronized (lock) {
+            return motionTime / 1e9;
+        }
+    }
+
+    /**
+     * @return seconds the planner waited for the next line
+     */
+    public double getStarvedTime() {
+        synchronized (lock) {
+            return starvedTime / 1e9;
+        }
+    }
+
+    /**
+     * @return true when every line sent has been executed
+     */
+    public boolean isIdle() {
+        synchronized (lock) {
+            return arrivals.isEmpty() && rx.isEmpty() && planner.isEmpty();
+        }
+    }
+
+    private void run() {
+        List<String> delivered = new ArrayList<>();
+        while (machine == Thread.currentThread()) {
+            long now = System.nanoTime();
+            long wake = now + MAX_PARK;
+            synchronized (lock) {
+                while (!arrivals.isEmpty() && arrivals.peek().time <= now) {
+                    String line = arrivals.poll().text;
+                    rxBytes += line.length() + 1;
+                    if (rxBytes > RX_BUFFER_SIZE) {
+                        overflows++;
+                    }
+                    rx.add(line);
+                }
+                advance(now);
+                while (!rx.isEmpty() && planner.size() < PLANNER_BLOCKS) {
+                    String line = rx.poll();
+                    rxBytes -= line.length() + 1;
+                    execute(now, line);
+                }
+                while (!responses.isEmpty() && responses.peek().time <= now) {
+                    delivered.add(responses.poll().text);
+                }
+                if (!arrivals.isEmpty()) {
+                    wake = Math.min(wake, arrivals.peek().time);
+                }
+                if (!responses.isEmpty()) {
+                    wake = Math.min(wake, responses.peek().time);
+                }
+                if (!planner.isEmpty() && !hold) {
+                    wake = Math.min(wake, blockEnd);
+                }
+            }
+            for (String response : delivered) {
+                comm.responseMessage(response);
+            }
+            delivered.clear();
+            LockSupport.parkNanos(wake - System.nanoTime());
+        }
+    }
+
+    /**
+     * Completes the blocks whose time has passed.
+     */
+    private void advance(long now) {
+        while (!hold && !planner.isEmpty() && blockEnd <= now) {
+            Block block = planner.poll();
+            x = block.x;
+            y = block.y;
+            z = block.z;
+            motionTime += block.duration;
+            lastBlockEnd = blockEnd;
+            if (!planner.isEmpty()) {
+                blockEnd += planner.peek().duration;
+            }
+        }
+    }
+
+    private void execute(long now, String line) {
+        lines++;
+        if (lines == rejectLine) {
+            respond(now, "error: Rejected by the stand-in");
+            return;
+        }
+        if (line.startsWith("$")) {
+            executeSystem(now, line);
+            return;
+        }
+        double toX = plannedX, toY = plannedY, toZ = plannedZ;
+        double dwell = Double.NaN;
+        boolean move = false;
+        boolean coordinates = false;
+        for (int i = 0; i < line.length();) {
+            char letter = Character.toUpperCase(line.charAt(i++));
+            if (letter == ' ') {
+                continue;
+            }
+            if (letter == '(' || letter == ';') {
+                break;
+            }
+            int start = i;
+            while (i < line.length() && "+-.0123456789".indexOf(line.charAt(i)) >= 0) {
+                i++;
+            }
+            double value;
+            try {
+                value = Double.parseDouble(line.substring(start, i));
+            } catch (NumberFormatException ex) {
+                respond(now, "error: Expected command letter");
+                return;
+            }
+            switch (letter) {
+                case 'G':
+                    if (value == 0 || value == 1 || value == 2 || value == 3 
+                            || value == 38.2) {
+                        motion = (int) value;
+                    } else if (value == 20) {
+                        scale = 25.4;
+                    } else if (value == 21) {
+                        scale = 1;
+                    } else if (value == 4) {
+                        dwell = 0;
+                    } else if (value == 10 || value == 92) {
+                        coordinates = true;
+                    }
+                    break;
+                case 'X':
+                    toX = value * scale;
+                    move = true;
+                    break;
+                case 'Y':
+                    toY = value * scale;
+                    move = true;
+                    break;
+                case 'Z':
+                    toZ = value * scale;
+                    move = true;
+                    break;
+                case 'F':
+                    feed = value * scale;
+                    break;
+                case 'P':
+                    if (!Double.isNaN(dwell)) {
+                        dwell = value;
+                    }
+                    break;
+                case 'M': case 'S': case 'T': case 'N': case 'L':
+                case 'I': case 'J': case 'K': case 'R':
+                    break;
+                default:
+                    respond(now, "error: Unsupported command");
+                    return;
+            }
+        }
+        if (!Double.isNaN(dwell)) {
+            plan(now, new Block((long) (dwell * 1e9 * timeScale), 
+                    plannedX, plannedY, plannedZ));
+        } else if (move && !coordinates) {
+            double distance = Math.sqrt((toX - plannedX) * (toX - plannedX)
+                    + (toY - plannedY) * (toY - plannedY) 
+                    + (toZ - plannedZ) * (toZ - plannedZ));
+            double rate = motion == 0 ? RAPID_RATE : feed;
+            plan(now, new Block((long) (distance / rate * 60e9 * timeScale), 
+                    toX, toY, toZ));
+            plannedX = toX;
+            plannedY = toY;
+            plannedZ = toZ;
+            if (motion == 38) {
+                respond(now, String.format(Locale.ROOT, "[PRB:%.3f,%.3f,%.3f:1]", 
+                        toX, toY, toZ));
+            }
+        }
+        respond(now, "ok");
+    }
+
+    private void executeSystem(long now, String line) {
+        switch (line) {
+            case "$$":
+                respond(now, "$11=0.010 (junction deviation, mm)");
+                respond(now, "$110=500.000 (x max rate, mm/min)");
+                respond(now, "$111=500.000 (y max rate, mm/min)");
+                respond(now, "$112=500.000 (z max rate, mm/min)");
+                break;
+            case "$H":
+                plannedX = plannedY = plannedZ = x = y = z = 0;
+                break;
+            case "$X":
+                respond(now, "[Caution: Unlocked]");
+                break;
+        }
+        respond(now, "ok");
+    }
+
+    private void plan(long now, Block block) {
+        if (planner.isEmpty()) {
+            if (lastBlockEnd > 0) {
+                underruns++;
+                starvedTime += now - lastBlockEnd;
+            }
+            blockEnd = now + block.duration;
+        }
+        planner.add(block);
+    }
+
+    private void respond(long now, String text) {
+        responses.add(new Event(now + latency, text));
+    }
+
+    private void reset(long now) {
+        arrivals.clear();
+        rx.clear();
+        rxBytes = 0;
+        planner.clear();
+        hold = false;
+        lastBlockEnd = 0;
+        plannedX = x;
+        plannedY = y;
+        plannedZ = z;
+        motion = 0;
+        scale = 1;
+        responses.clear();
+        respond(now, WELCOME);
+        respond(now, "['$H'|'$X' to unlock]");
+    }
+
+    private static class Event {
+
+        final long time;
+        final String text;
+
+        Event(long time, String text) {
+            this.time = time;
+            this.text = text;
+        }
+    }
+
+    private static class Block {
+
+        final long duration;
+        final double x, y, z;
+
+        Block(long duration, double x, double y, double z) {
+            this.duration = duration;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+}
@@ -36,7 +36,8 @@ public class JSSCConnection extends Connection implements SerialPortEventListene
 
     // General variables
     private SerialPort serialPort;
-    private StringBuilder inputBuffer = null;
+    private LineFramer inputBuffer = null;
+    private static final int INPUT_BUFFER_SIZE = 256; // longer than any GRBL response
 
     public JSSCConnection() {
         this("\r\n");
@@ -58,7 +59,7 @@ public class JSSCConnection extends Connection implements SerialPortEventListene
     // $ sudo chmod 777 /var/lock
     @Override
     synchronized public boolean openPort(String name, int baud) throws Exception {
-        this.inputBuffer = new StringBuilder();
+        this.inputBuffer = newInputBuffer();
         
         boolean returnCode;
 
@@ -110,33 +111,19 @@ public class JSSCConnection extends Connection implements SerialPortEventListene
     
     /**
      * Reads data from the serial port. RXTX SerialPortEventListener method.
+     * Complete lines are passed to the communicator, the rest waits for 
+     * the next event.
      */
     @Override
     public void serialEvent(SerialPortEvent evt) {
         if (inputBuffer == null) {
-            inputBuffer = new StringBuilder();
+            inputBuffer = newInputBuffer();
         }
 
         try {
             byte[] buf = this.serialPort.readBytes();
             if (buf != null && buf.length > 0) {
-                String s = new String(buf, 0, buf.length);
-                inputBuffer.append(s);
-                // Check for line terminator and split out command(s).
-                if (inputBuffer.toString().contains(comm.getLineTerminator())) {
-                    // Split with the -1 option will give an empty string at
-                    // the end if there is a terminator there as well.
-                    String []commands = inputBuffer.toString().split(comm.getLineTerminator(), -1);
-                    for (int i=0; i < commands.length; i++) {
-                        // Make sure this isn't the last command.
-                        if ((i+1) < commands.length) {
-                            comm.responseMessage(commands[i]);
-                        // Append last command to input buffer because it didn't have a terminator.
-                        } else {
-                            inputBuffer = new StringBuilder().append(commands[i]);
-                        }
-                    }
-                }
+                inputBuffer.accept(buf, 0, buf.length);
             }
         } catch ( Exception e ) {
             e.printStackTrace();
@@ -144,6 +131,10 @@ public class JSSCConnection extends Connection implements SerialPortEventListene
         }
     }
 
+    private LineFramer newInputBuffer() {
+        return new LineFramer(INPUT_BUFFER_SIZE, line -> comm.responseMessage(line));
+    }
+
     public static boolean supports(String portname, int baud) {
         SerialPort serialPort = new SerialPort(portname);
         try {
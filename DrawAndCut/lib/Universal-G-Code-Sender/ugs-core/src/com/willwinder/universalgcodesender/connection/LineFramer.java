@@ -0,0 +1,102 @@
+/*
+ * Splits bytes received from a serial port into lines.
+ */
+
+/*
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.connection;
+
+import java.util.function.Consumer;
+
+/**
+ * Frames lines terminated by CR LF, a lone CR or a lone LF. Bytes of the
+ * line in progress wait in a ring buffer that is reused for the life of
+ * the connection, each byte is looked at once. The only allocation is the
+ * string of a complete line, none for the ok acknowledging a command.
+ * <p>
+ * A line longer than the buffer is handed over in pieces of the buffer 
+ * size. Not thread safe, meant to be fed from the serial event thread.
+ *
+ * @author akouznet
+ */
+public class LineFramer {
+
+    private static final String OK = "ok";
+
+    private final byte[] ring;
+    private final int mask;
+    private final Consumer<String> lines;
+    private final char[] chars;
+    private int head; // first byte of the line in progress
+    private int tail; // next byte to be written
+    private boolean afterCr;
+
+    /**
+     * @param capacity size of the buffer, rounded up to a power of two
+     * @param lines receives each complete line without its terminator
+     */
+    public LineFramer(int capacity, Consumer<String> lines) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.ring = new byte[size];
+        this.mask = size - 1;
+        this.lines = lines;
+        this.chars = new char[size];
+    }
+
+    public void accept(byte[] buf, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            byte b = buf[i];
+            if (b == '\r') {
+                emit();
+                afterCr = true;
+            } else if (b == '\n') {
+                if (!afterCr) {
+                    emit();
+                }
+                afterCr = false;
+            } else {
+                afterCr = false;
+                if (tail - head == ring.length) {
+                    emit();
+                }
+                ring[tail++ & mask] = b;
+            }
+        }
+    }
+
+    /**
+     * Drops the line in progress.
+     */
+    public void clear() {
+        head = tail;
+        afterCr = false;
+    }
+
+    private void emit() {
+        int length = tail - head;
+        if (length == 2 && ring[head & mask] == 'o' && ring[(head + 1) & mask] == 'k') {
+            head = tail;
+            lines.accept(OK);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (ring[(head + i) & mask] & 0xff);
+        }
+        head = tail;
+        lines.accept(new String(chars, 0, length));
+    }
+}
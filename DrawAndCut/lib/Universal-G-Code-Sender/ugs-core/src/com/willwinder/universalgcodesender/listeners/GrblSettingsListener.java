@@ -42,6 +42,15 @@ public class GrblSettingsListener implements ControllerListener {
         return settings;
     }
 
+    /**
+     * Copy of the settings received so far, never queries the controller.
+     */
+    public List<String> getCachedSettings() {
+        synchronized (settings) {
+            return new ArrayList<>(settings);
+        }
+    }
+
     public void refreshSettings() {
         try {
             this.sending = true;
@@ -87,7 +96,9 @@ public class GrblSettingsListener implements ControllerListener {
             this.firstSettingReceived = false;
             if (this.sending)
                 this.sending = false;
-            settings.clear();
+            synchronized (settings) {
+                settings.clear();
+            }
         }
     }
 
@@ -110,7 +121,9 @@ public class GrblSettingsListener implements ControllerListener {
                 this.inParsingMode = false;
             } else if (msg.startsWith("$"))  {
                 firstSettingReceived = true;
-                settings.add(msg);
+                synchronized (settings) {
+                    settings.add(msg);
+                }
             }
         }
     }
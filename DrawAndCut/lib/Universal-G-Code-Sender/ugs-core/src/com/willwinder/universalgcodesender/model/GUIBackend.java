@@ -345,7 +345,7 @@ public class GUIBackend implements BackendAPI, ControllerListener {
             estimate = timePerCode * this.getNumRows();
         }
         
-        return estimate - elapsedTime;
+        return Math.max(0, estimate - elapsedTime);
     }
 
     @Override
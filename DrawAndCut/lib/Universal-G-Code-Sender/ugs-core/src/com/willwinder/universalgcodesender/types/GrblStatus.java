@@ -0,0 +1,393 @@
+/*
+ * Reusable record of a GRBL status report, filled in by a single pass parser
+ * that understands both the GRBL 0.9 and the GRBL 1.1 report format.
+ */
+
+/*
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.willwinder.universalgcodesender.types;
+
+import com.willwinder.universalgcodesender.model.Utils.Units;
+
+/**
+ * Status report such as
+ * {@code <Idle,MPos:0.000,0.000,0.000,WPos:0.000,0.000,0.000,Buf:0,RX:0>}
+ * (GRBL 0.9) or {@code <Run|MPos:1.000,2.000,0.000|FS:500,0|Bf:15,128|Ov:100,100,100|WCO:0.000,0.000,0.000>}
+ * (GRBL 1.1). GRBL 1.1 reports either the machine or the work position and
+ * only sends the work coordinate offset and the overrides every few reports,
+ * so those are kept between reports and the missing position is derived from
+ * them. Not thread safe, meant to be reused by the thread reading responses.
+ *
+ * @author akouznet
+ */
+public class GrblStatus {
+    private static final String[] STATES = {
+        "Idle", "Run", "Hold", "Jog", "Alarm", "Door", "Check", "Home", "Sleep",
+        "Queue", "Cycle"
+    };
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+        1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+    private static final int MAX_VALUES = 6;
+
+    private String state;
+    private int subState;
+    private boolean hasMachinePosition, hasWorkPosition, hasWorkOffset;
+    private double machineX, machineY, machineZ;
+    private double workX, workY, workZ;
+    private double offsetX, offsetY, offsetZ;
+    private int fractionDigits;
+    private double feed, spindle;
+    private int plannerBlocksFree, rxBytesFree;
+    private int plannerBlocksUsed, rxBytesUsed;
+    private int lineNumber;
+    private int feedOverride = 100, rapidOverride = 100, spindleOverride = 100;
+
+    // Parser state, only valid during parse()
+    private final double[] values = new double[MAX_VALUES];
+    private String report;
+    private int pos;
+
+    /**
+     * Checks if the response contains a status report.
+     */
+    public static boolean isStatusReport(String response) {
+        int start = response.indexOf('<');
+        return start >= 0 && response.indexOf('>', start) > start;
+    }
+
+    /**
+     * Parses the status report, replacing the values of the previous one.
+     * The work coordinate offset and the overrides are kept if this report
+     * doesn't have them.
+     * @return false if the report isn't a status report, this record is left
+     * cleared then
+     */
+    public boolean parse(String report) {
+        clear();
+        int start = report.indexOf('<');
+        if (start < 0 || report.indexOf('>', start) < 0) {
+            return false;
+        }
+        this.report = report;
+        this.pos = start + 1;
+        try {
+            parseState();
+            while (pos < report.length() && report.charAt(pos) != '>') {
+                parseField();
+            }
+        } finally {
+            this.report = null;
+        }
+        if (hasMachinePosition && hasWorkPosition) {
+            offsetX = machineX - workX;
+            offsetY = machineY - workY;
+            offsetZ = machineZ - workZ;
+            hasWorkOffset = true;
+        } else if (hasWorkOffset && hasMachinePosition) {
+            workX = machineX - offsetX;
+            workY = machineY - offsetY;
+            workZ = machineZ - offsetZ;
+            hasWorkPosition = true;
+        } else if (hasWorkOffset && hasWorkPosition) {
+            machineX = workX + offsetX;
+            machineY = workY + offsetY;
+            machineZ = workZ + offsetZ;
+            hasMachinePosition = true;
+        }
+        return state != null;
+    }
+
+    private void clear() {
+        state = null;
+        subState = -1;
+        hasMachinePosition = hasWorkPosition = false;
+        fractionDigits = -1;
+        feed = spindle = Double.NaN;
+        plannerBlocksFree = rxBytesFree = -1;
+        plannerBlocksUsed = rxBytesUsed = -1;
+        lineNumber = -1;
+    }
+
+    private void parseState() {
+        int begin = pos;
+        while (pos < report.length() && Character.isLetter(report.charAt(pos))) {
+            pos++;
+        }
+        if (pos == begin) {
+            return;
+        }
+        state = stateName(begin, pos - begin);
+        if (pos < report.length() && report.charAt(pos) == ':') {
+            pos++;
+            if (parseValues() > 0) {
+                subState = (int) values[0];
+            }
+        }
+        skipSeparator();
+    }
+
+    private String stateName(int begin, int length) {
+        for (String known : STATES) {
+            if (known.length() == length
+                    && report.regionMatches(begin, known, 0, length)) {
+                return known;
+            }
+        }
+        return report.substring(begin, begin + length);
+    }
+
+    private void parseField() {
+        int begin = pos;
+        while (pos < report.length() && report.charAt(pos) != ':'
+                && !isSeparator(report.charAt(pos))) {
+            pos++;
+        }
+        int length = pos - begin;
+        if (pos >= report.length() || report.charAt(pos) != ':') {
+            skipSeparator();
+            return;
+        }
+        pos++;
+        int count = parseValues();
+        if (count == 0) {
+            // Pin states and accessories are letters, not numbers
+            while (pos < report.length() && !isSeparator(report.charAt(pos))) {
+                pos++;
+            }
+        } else if (is(begin, length, "MPos") && count >= 3) {
+            machineX = values[0];
+            machineY = values[1];
+            machineZ = values[2];
+            hasMachinePosition = true;
+        } else if (is(begin, length, "WPos") && count >= 3) {
+            workX = values[0];
+            workY = values[1];
+            workZ = values[2];
+            hasWorkPosition = true;
+        } else if (is(begin, length, "WCO") && count >= 3) {
+            offsetX = values[0];
+            offsetY = values[1];
+            offsetZ = values[2];
+            hasWorkOffset = true;
+        } else if (is(begin, length, "FS")) {
+            feed = values[0];
+            spindle = count > 1 ? values[1] : Double.NaN;
+        } else if (is(begin, length, "F")) {
+            feed = values[0];
+        } else if (is(begin, length, "Bf")) {
+            plannerBlocksFree = (int) values[0];
+            rxBytesFree = count > 1 ? (int) values[1] : -1;
+        } else if (is(begin, length, "Buf")) {
+            plannerBlocksUsed = (int) values[0];
+        } else if (is(begin, length, "RX")) {
+            rxBytesUsed = (int) values[0];
+        } else if (is(begin, length, "Ln")) {
+            lineNumber = (int) values[0];
+        } else if (is(begin, length, "Ov") && count >= 3) {
+            feedOverride = (int) values[0];
+            rapidOverride = (int) values[1];
+            spindleOverride = (int) values[2];
+        }
+        skipSeparator();
+    }
+
+    private boolean is(int begin, int length, String name) {
+        return name.length() == length
+                && report.regionMatches(begin, name, 0, length);
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '|' || c == ',' || c == '>';
+    }
+
+    private void skipSeparator() {
+        if (pos < report.length() && report.charAt(pos) != '>') {
+            pos++;
+        }
+    }
+
+    /**
+     * Parses comma separated numbers up to the next field name or separator
+     * into values. The position is left at the separator after the last one.
+     */
+    private int parseValues() {
+        int count = 0;
+        while (count < MAX_VALUES && parseNumber(count)) {
+            count++;
+            if (pos + 1 < report.length() && report.charAt(pos) == ','
+                    && startsNumber(report.charAt(pos + 1))) {
+                pos++;
+            } else {
+                break;
+            }
+        }
+        return count;
+    }
+
+    private static boolean startsNumber(char c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
+    }
+
+    /**
+     * Parses a decimal number without exponent into values[index]. Exact as
+     * long as it has less than 16 significant digits, which GRBL never sends.
+     */
+    private boolean parseNumber(int index) {
+        int p = pos;
+        int length = report.length();
+        boolean negative = false;
+        if (p < length && (report.charAt(p) == '-' || report.charAt(p) == '+')) {
+            negative = report.charAt(p) == '-';
+            p++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+        for (; p < length; p++) {
+            char c = report.charAt(p);
+            if (c >= '0' && c <= '9') {
+                if (mantissa < Long.MAX_VALUE / 10 - 9) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (fraction >= 0) {
+                        fraction++;
+                    }
+                }
+                digits++;
+            } else if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        double value = mantissa;
+        if (fraction > 0) {
+            value /= POWERS_OF_TEN[Math.min(fraction, POWERS_OF_TEN.length - 1)];
+        }
+        values[index] = negative ? -value : value;
+        if (fractionDigits < 0 && fraction >= 0) {
+            fractionDigits = fraction;
+        }
+        pos = p;
+        return true;
+    }
+
+    /** Machine state such as Idle, Run or Alarm, null if not reported. */
+    public String getState() {
+        return state;
+    }
+
+    /** The number after the state in GRBL 1.1, e.g. 0 in Hold:0, else -1. */
+    public int getSubState() {
+        return subState;
+    }
+
+    public boolean hasMachinePosition() {
+        return hasMachinePosition;
+    }
+
+    public double getMachineX() {
+        return machineX;
+    }
+
+    public double getMachineY() {
+        return machineY;
+    }
+
+    public double getMachineZ() {
+        return machineZ;
+    }
+
+    public boolean hasWorkPosition() {
+        return hasWorkPosition;
+    }
+
+    public double getWorkX() {
+        return workX;
+    }
+
+    public double getWorkY() {
+        return workY;
+    }
+
+    public double getWorkZ() {
+        return workZ;
+    }
+
+    /** Units the positions are reported in, GRBL sends 3 decimals in mm. */
+    public Units getUnits() {
+        if (fractionDigits < 0) {
+            return Units.UNKNOWN;
+        }
+        return fractionDigits == 3 ? Units.MM : Units.INCH;
+    }
+
+    /** Current feed rate, NaN if not reported. */
+    public double getFeed() {
+        return feed;
+    }
+
+    /** Current spindle speed, NaN if not reported. */
+    public double getSpindle() {
+        return spindle;
+    }
+
+    /** Free planner blocks (GRBL 1.1 Bf), -1 if not reported. */
+    public int getPlannerBlocksFree() {
+        return plannerBlocksFree;
+    }
+
+    /** Free bytes in the serial RX buffer (GRBL 1.1 Bf), -1 if not reported. */
+    public int getRxBytesFree() {
+        return rxBytesFree;
+    }
+
+    /** Planner blocks in use (GRBL 0.9 Buf), -1 if not reported. */
+    public int getPlannerBlocksUsed() {
+        return plannerBlocksUsed;
+    }
+
+    /** Bytes in the serial RX buffer (GRBL 0.9 RX), -1 if not reported. */
+    public int getRxBytesUsed() {
+        return rxBytesUsed;
+    }
+
+    /** Line number being executed, -1 if not reported. */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /** Feed override in percent, last reported. */
+    public int getFeedOverride() {
+        return feedOverride;
+    }
+
+    /** Rapid override in percent, last reported. */
+    public int getRapidOverride() {
+        return rapidOverride;
+    }
+
+    /** Spindle override in percent, last reported. */
+    public int getSpindleOverride() {
+        return spindleOverride;
+    }
+}
@@ -67,13 +67,16 @@ public class CommUtils {
     
     /** 
      * Checks if there is enough room in the GRBL buffer for nextCommand.
+     * The command is counted as sent, with a newline added unless it 
+     * already ends with one.
      */
     static public Boolean checkRoomInBuffer(int sentBuffer, String nextCommand, int bufferSize) {
         if (nextCommand == null ) {
             return false;
         }
         
-        int characters = sentBuffer + nextCommand.length() + 1;
+        int characters = sentBuffer + nextCommand.length() 
+                + (nextCommand.endsWith("\n") ? 0 : 1);
         return characters <= bufferSize;
     }
     
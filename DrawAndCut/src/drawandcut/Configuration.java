@@ -23,6 +23,10 @@
  */
 package drawandcut;
 
+import drawandcut.gcode.DepthStrategy;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
 /**
  * @author akouznet
  */
@@ -52,15 +56,45 @@ public class Configuration {
     public static final int RPM = Integer.parseInt(System.getProperty("rpm", "9000")); // rpm
     public static final double FEED = Double.parseDouble(System.getProperty("feed", Double.toString(44 * IN))); // mmpm
     public static final double PLUNGE_FEED = Double.parseDouble(System.getProperty("plungeFeed", Double.toString(10 * IN))); // mmpm
+    public static final double RAPID_FEED = Double.parseDouble(System.getProperty("rapidFeed", Double.toString(200 * IN))); // mmpm, used for estimates only
     public static final double RECOMMENDED_DOC = 0.019 * IN; // 0.4826 mm <-- recommended DOC
     public static final double INITIALS_DOC = RECOMMENDED_DOC; // mm
     public static final int NUMBER_OF_PASSES = Integer.parseInt(System.getProperty("numberOfPasses", "7"));
     public static final double DOC = MATERIAL_SIZE_Z / NUMBER_OF_PASSES; // mm
+    public static final String PROFILES_FILE = System.getProperty("profilesFile", "profiles.properties"); // per operation overrides of the above
+    public static final boolean ENABLE_FEED_SCHEDULING = Boolean.getBoolean("enableFeedScheduling");
+    public static final double FEED_BOOST = Double.parseDouble(System.getProperty("feedBoost", "1.25")); // of the feed, at most, where the cut is much narrower than a slot
+    public static final double MIN_FEED_FACTOR = Double.parseDouble(System.getProperty("minFeedFactor", "0.5")); // of the feed, in sharp corners
+    public static final boolean DISABLE_HELICAL_HOLE = Boolean.getBoolean("disableHelicalHole");
+    public static final boolean DISABLE_PEEPHOLE = Boolean.getBoolean("disablePeephole");
+    public static final boolean VERIFY_PEEPHOLE = Boolean.getBoolean("verifyPeephole");
+    public static final boolean ENABLE_NESTING = Boolean.getBoolean("enableNesting");
+    public static final double NESTING_SPACING = Double.parseDouble(System.getProperty("nestingSpacing", Double.toString(TOOL_DIAMETER))); // mm of material left between the kerfs
+    public static final double[] NESTING_ROTATIONS = Stream.of(System.getProperty("nestingRotations", "0,90,180,270").split(",")).mapToDouble(Double::parseDouble).toArray(); // degrees
+    public static final double NESTING_RESOLUTION = 1; // mm
+    public static final boolean DISABLE_SHORT_RETRACTS = Boolean.getBoolean("disableShortRetracts");
+    public static final double RETRACT_CLEARANCE = Double.parseDouble(System.getProperty("retractClearance", "1")); // mm above the material on short hops
+    public static final double SHORT_HOP = Double.parseDouble(System.getProperty("shortHop", "30")); // mm
+    public static final DepthStrategy DEPTH_STRATEGY = DepthStrategy.valueOf(System.getProperty("depthStrategy", "LAYER"));
+    public static final boolean COMPARE_STRATEGIES = Boolean.getBoolean("compareStrategies");
     public static final double Z_ACCURACY = 0.01; // mm
 
     public static final double PROBING_OFFSET = Double.parseDouble(System.getProperty("probingOffset", "0.81")); // mm (delta between probing Z and coordinate 0)
     public static final String PORT_NAME = System.getProperty("portName", "COM4");
+    public static final int BAUD_RATE = Integer.getInteger("baudRate", 115200);
+    public static final boolean SINGLE_STEP_STREAMING = Boolean.getBoolean("singleStepStreaming"); // wait for each ok instead of filling GRBL's receive buffer
     public static final double FLATNESS = 0.01; // mm
+    // The cut is within FLATNESS + max(CHORD_TOLERANCE, ARC_TOLERANCE) of the outline
+    public static final double CHORD_TOLERANCE = Double.parseDouble(System.getProperty("chordTolerance", Double.toString(FLATNESS))); // mm
+    public static final boolean COMPACT_GCODE = Boolean.getBoolean("compactGcode");
+    public static final boolean DISABLE_ARCS = Boolean.getBoolean("disableArcs");
+    public static final boolean DISABLE_ORDERING = Boolean.getBoolean("disableOrdering");
+    public static final boolean SEQUENTIAL_GCODE = Boolean.getBoolean("sequentialGcode");
+    public static final boolean DISABLE_PROGRAM_CACHE = Boolean.getBoolean("disableProgramCache");
+    public static final String PROGRAM_CACHE_DIR = System.getProperty("programCacheDir", "programCache");
+    public static final long PROGRAM_CACHE_MEMORY = Long.getLong("programCacheMemory", 16 << 20); // bytes
+    public static final long PROGRAM_CACHE_DISK = Long.getLong("programCacheDisk", 256 << 20); // bytes
+    public static final double ARC_TOLERANCE = Double.parseDouble(System.getProperty("arcTolerance", Double.toString(FLATNESS))); // mm
 
     public static final int SCREEN_WIDTH = Integer.parseInt(System.getProperty("screenWidth", "800"));
     public static final int SCREEN_HEIGHT = Integer.parseInt(System.getProperty("screenHeight", "480"));
@@ -81,14 +115,25 @@ public class Configuration {
             "http://javahub-demo-javahub-demo-backend.44fs.preview.openshiftapps.com/javahub-cutter-backend/modules/drawings/");
     
     public static final boolean ENABLE_EVENER = Boolean.getBoolean("enableEvener");
+    public static final boolean ENABLE_HEIGHT_MAP = Boolean.getBoolean("enableHeightMap");
+    public static final String HEIGHT_MAP_FILE = System.getProperty("heightMapFile", "heightmap.txt"); // last probed map, for reference only
+    public static final int HEIGHT_MAP_COLUMNS = Integer.getInteger("heightMapColumns", 5);
+    public static final int HEIGHT_MAP_ROWS = Integer.getInteger("heightMapRows", 5);
+    public static final double HEIGHT_MAP_PROBE_DEPTH = Double.parseDouble(System.getProperty("heightMapProbeDepth", "3")); // mm below the top of the material
+    public static final double HEIGHT_MAP_PROBE_FEED = Double.parseDouble(System.getProperty("heightMapProbeFeed", "200")); // mmpm
+    public static final boolean FULL_SHEET_FACING = Boolean.getBoolean("fullSheetFacing");
+    public static final double FACING_STEPOVER = Double.parseDouble(System.getProperty("facingStepover", "0.9")); // of the tool diameter
     public static final boolean ENABLE_TEXT = Boolean.getBoolean("enableText");
 
     public static final String FONT_FACE = System.getProperty("fontFace", "Verdana");
     public static final int FONT_SIZE = Integer.getInteger("fontSize", 100);
+    public static final boolean STROKE_FONT = Boolean.getBoolean("strokeFont");
+    public static final double STROKE_FONT_HEIGHT = Double.parseDouble(System.getProperty("strokeFontHeight", "20")); // mm, capitals
 
     static {
         System.out.println("Configuration summary:");
         System.out.println("Cutter " + (DISABLE_CUTTER ? "disabled" : "enabled"));
+        System.out.println("Streaming " + (SINGLE_STEP_STREAMING ? "single step" : "by character counting"));
         System.out.println("Camera " + (DISABLE_CAMERA ? "disabled" : "enabled"));
         System.out.println();
         System.out.printf("Material size (X x Y x Z): %.1f x %.1f x %.3f mm. Bottom Z = %.3f mm.\n", MATERIAL_SIZE_X, MATERIAL_SIZE_Y, MATERIAL_SIZE_Z, MATERIAL_BASE_Z);
@@ -98,6 +143,23 @@ public class Configuration {
         System.out.printf("Material size (X x Y x Z): %.2f x %.2f x %.3f in. Bottom Z = %.3f in.\n", MATERIAL_SIZE_X / IN, MATERIAL_SIZE_Y / IN, MATERIAL_SIZE_Z / IN, MATERIAL_BASE_Z / IN);
         System.out.printf("Number of passes: %d. Depth of one cut: %.4f in (Recommended: %.4f in).\n", NUMBER_OF_PASSES, DOC / IN, RECOMMENDED_DOC / IN);
         System.out.printf("RPM: %d. Feed: %.1f ipm, plunge feed: %.1f ipm\n", RPM, FEED / IN, PLUNGE_FEED / IN);
+        System.out.println();
+        System.out.println("G-code output " + (COMPACT_GCODE ? "compact" : "verbose"));
+        System.out.println("Operation profiles from " + PROFILES_FILE);
+        System.out.println("Feed scheduling " + (ENABLE_FEED_SCHEDULING ? String.format("enabled, %.2f to %.2f of the feed", MIN_FEED_FACTOR, FEED_BOOST) : "disabled"));
+        System.out.println("Depth strategy: " + DEPTH_STRATEGY);
+        System.out.println("Short retracts " + (DISABLE_SHORT_RETRACTS ? "disabled" : String.format("%.1f mm above the material for hops up to %.0f mm", RETRACT_CLEARANCE, SHORT_HOP)));
+        System.out.println("Contour ordering " + (DISABLE_ORDERING ? "disabled" : "enabled"));
+        System.out.println("Toolpath generation " + (SEQUENTIAL_GCODE ? "sequential" : "parallel"));
+        System.out.println("Height map " + (ENABLE_HEIGHT_MAP ? String.format("%d x %d points in %s", HEIGHT_MAP_COLUMNS, HEIGHT_MAP_ROWS, HEIGHT_MAP_FILE) : "disabled"));
+        System.out.println("Program cache " + (DISABLE_PROGRAM_CACHE ? "disabled" : "in " + PROGRAM_CACHE_DIR));
+        System.out.println("Text " + (!ENABLE_TEXT ? "disabled" : STROKE_FONT ? String.format("in the stroke font, %.0f mm high", STROKE_FONT_HEIGHT) : "in " + FONT_FACE));
+        System.out.println("Hole " + (DISABLE_HELICAL_HOLE || DISABLE_ARCS ? "cut in layers" : "cut with a helix"));
+        System.out.println("Nesting " + (ENABLE_NESTING ? String.format("enabled, %.2f mm apart, rotations %s", NESTING_SPACING, Arrays.toString(NESTING_ROTATIONS)) : "disabled"));
+        System.out.println("Peephole optimizer " + (DISABLE_PEEPHOLE ? "disabled" : VERIFY_PEEPHOLE ? "enabled and verified" : "enabled"));
+        System.out.println("Arc fitting " + (DISABLE_ARCS ? "disabled" : String.format("enabled, tolerance %.3f mm", ARC_TOLERANCE)));
+        System.out.println(String.format("Decimation tolerance %.3f mm, cut within %.3f mm of the outline", CHORD_TOLERANCE, 
+                FLATNESS + Math.max(CHORD_TOLERANCE, DISABLE_ARCS ? 0 : ARC_TOLERANCE)));
 
         System.out.println("");
     }
@@ -25,27 +25,46 @@ package drawandcut;
 
 import drawandcut.cutter.Cutter;
 import drawandcut.cutter.CutterConnection;
+import drawandcut.gcode.Operation;
+import drawandcut.gcode.OperationProfile;
 import drawandcut.gcode.PathConverter;
+import drawandcut.gcode.PeepholeOptimizer;
 import drawandcut.ui.ControlPane;
 import drawandcut.ui.DrawPane;
 import drawandcut.ui.ScannerPane;
 import drawandcut.ui.ShapesPane;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.Stage;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.awt.geom.Rectangle2D;
 import java.net.URL;
-import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.function.Supplier;
 import javafx.beans.binding.Bindings;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ReadOnlyLongProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.geometry.Insets;
+import javafx.geometry.Point2D;
 import javafx.scene.control.ToggleGroup;
 import javafx.scene.layout.Background;
+import javafx.scene.shape.Path;
 import javafx.scene.paint.Color;
+import drawandcut.gcode.AsyncGcodeSink;
+import drawandcut.gcode.FileChannelGcodeSink;
+import drawandcut.gcode.GcodeSink;
+import drawandcut.gcode.HeightMap;
+import drawandcut.gcode.JobSummary;
+import drawandcut.gcode.ProgramCache;
+import drawandcut.gcode.SheetJob;
 import drawandcut.gcode.SurfaceEvener;
 import drawandcut.ui.ExitPopup;
 import java.io.FileNotFoundException;
@@ -74,6 +93,18 @@ public class DrawAndCut extends Application {
     private BorderPane borderPane;
     private Task<String> downloadTask;
     private ExitPopup exitPopup;
+    /**
+     * Height map probed on the sheet on the bed, applied to every program cut
+     * until the sheet is faced. Not loaded from HEIGHT_MAP_FILE at startup,
+     * the sheet may have been replaced while the demo was not running.
+     */
+    private volatile HeightMap heightMap;
+    private final Map<Operation, OperationProfile> profiles = OperationProfile.load(new File(PROFILES_FILE));
+    private final SheetJob sheetJob = new SheetJob();
+    private final BooleanProperty generating = new SimpleBooleanProperty();
+    private AsyncGcodeSink archiver;
+    private final ProgramCache programCache = DISABLE_PROGRAM_CACHE ? null 
+            : new ProgramCache(new File(PROGRAM_CACHE_DIR), PROGRAM_CACHE_MEMORY, PROGRAM_CACHE_DISK);
 
     /**
      * @param args the command line arguments
@@ -84,6 +115,11 @@ public class DrawAndCut extends Application {
 
     @Override
     public void start(Stage primaryStage) throws Exception {
+        if (COMPARE_STRATEGIES) {
+            new StrategyComparison(shapes).run();
+            Platform.exit();
+            return;
+        }
 
         cutterConnection = new CutterConnection();
         if (!DISABLE_CUTTER) {
@@ -139,30 +175,62 @@ public class DrawAndCut extends Application {
                                 ? Bindings.createBooleanBinding(() -> false)
                                 : drawPane.holeProperty().isNull())
                         .or(borderPane.centerProperty().isEqualTo(scannerPane))
+                        .or(generating)
                         .or(DISABLE_CUTTER
                                 ? Bindings.createBooleanBinding(() -> false)
                                 : cutterConnection.getCutter().ready().not()));
+        if (!DISABLE_CUTTER) {
+            ReadOnlyLongProperty jobEnd = cutterConnection.getCutter().jobEnd();
+            controlPane.cutButton().textProperty().bind(Bindings.createStringBinding(
+                    () -> jobEnd.get() == 0 ? "Cut" : String.format("Cut\nuntil %tR", jobEnd.get()),
+                    jobEnd));
+            controlPane.statusLabel().textProperty().bind(cutterConnection.getCutter().status());
+        }
+        controlPane.queueButton().disableProperty()
+                .bind(drawPane.outlineProperty().isNull()
+                        .or(NO_HOLE
+                                ? Bindings.createBooleanBinding(() -> false)
+                                : drawPane.holeProperty().isNull()));
+        controlPane.queueButton().setOnAction(t -> queueCut());
         controlPane.cutButton().setOnAction(t -> {
-            List<String> output = new PathConverter(
-                    drawPane.outlineProperty().get(),
-                    drawPane.holeProperty().get(),
-                    drawPane.getInitials(),
-                    RPM, FEED, DOC, PLUNGE_FEED).getOutput();
-            shapesPane.addCut(drawPane.getCut());
-//            System.out.println("Program:");
-//            for(String line : output) {
-//                System.out.println(line);
-//            }
-            try {
-                Files.write(new File("output.nc").toPath(), output);
-            } catch (IOException ex) {
-                Logger.getLogger(DrawAndCut.class.getName())
-                        .log(Level.SEVERE, null, ex);
+            GcodeSink sink = openProgramSink("output.nc");
+            Path outline = drawPane.outlineProperty().get();
+            Point2D hole = drawPane.holeProperty().get();
+            Path initials = drawPane.getInitials();
+            HeightMap surface = heightMap;
+            if (ENABLE_NESTING && sheetJob.size() > 0) {
+                queueCut();
+                generateProgram("Toolpath generator", sink, () -> {
+                    JobSummary summary = sheetJob.cut(profiles, DEPTH_STRATEGY, 
+                            surface, sink);
+                    Platform.runLater(this::showQueued);
+                    return summary;
+                });
+                return;
             }
-            Cutter cutter = cutterConnection.getCutter();
-            if (cutter != null) {
-                cutter.sendSequence(output.toArray(new String[output.size()]));
+            if (programCache == null) {
+                generateProgram("Toolpath generator", sink, () -> new PathConverter(
+                        outline, hole, initials,
+                        profiles, DEPTH_STRATEGY, surface, sink).getSummary());
+            } else {
+                String key = ProgramCache.key(outline, hole, initials, 
+                        profiles, surface);
+                generateProgram("Toolpath generator", sink, () -> {
+                    JobSummary summary;
+                    if (programCache.replay(key, sink)) {
+                        summary = new JobSummary();
+                    } else {
+                        GcodeSink recorder = programCache.recorder(key);
+                        summary = new PathConverter(outline, hole, initials,
+                                profiles, DEPTH_STRATEGY, surface,
+                                GcodeSink.tee(sink, recorder)).getSummary();
+                        recorder.close();
+                    }
+                    programCache.summarize(summary);
+                    return summary;
+                });
             }
+            shapesPane.addCut(drawPane.getCut());
         });
         controlPane.exitButton().setOnAction(x -> {
             scannerPane.stop();
@@ -185,21 +253,32 @@ public class DrawAndCut extends Application {
                     b.getMinY() - PADDING);
         });
         
+        controlPane.evenButton().disableProperty().bind(generating);
         controlPane.evenButton().setOnAction(t -> {
-            List<String> output = new SurfaceEvener(
-                    RPM, FEED, PLUNGE_FEED).getOutput();
-            try {
-                Files.write(new File("surfaceEvener.nc").toPath(), output);
-            } catch (IOException ex) {
-                Logger.getLogger(DrawAndCut.class.getName())
-                        .log(Level.SEVERE, null, ex);
-            }
-            Cutter cutter = cutterConnection.getCutter();
-            if (cutter != null) {
-                cutter.sendSequence(output.toArray(new String[output.size()]));
-            }
+            Path outline = drawPane.outlineProperty().get();
+            Rectangle2D region = FULL_SHEET_FACING || outline == null 
+                    ? null : SurfaceEvener.facingRegion(outline);
+            GcodeSink sink = openProgramSink("surfaceEvener.nc");
+            // Facing flattens the surface the map was probed on
+            heightMap = null;
+            generateProgram("Surface evener generator", sink, 
+                    () -> new SurfaceEvener(profiles.get(Operation.FACING), region, sink).getSummary());
         });
 
+        controlPane.probeButton().disableProperty().bind(DISABLE_CUTTER
+                ? Bindings.createBooleanBinding(() -> true)
+                : cutterConnection.getCutter().ready().not());
+        controlPane.probeButton().setOnAction(t -> cutterConnection.getCutter().probeHeightMap(
+                HeightMap.forSheet(HEIGHT_MAP_COLUMNS, HEIGHT_MAP_ROWS), map -> {
+                    heightMap = map;
+                    try {
+                        map.save(new File(HEIGHT_MAP_FILE).toPath());
+                    } catch (IOException ex) {
+                        Logger.getLogger(DrawAndCut.class.getName())
+                                .log(Level.SEVERE, null, ex);
+                    }
+                }));
+
         primaryStage.setTitle("JavaOne2016 - Draw and Cut demo");
         drawScene = new Scene(borderPane, SCREEN_WIDTH, SCREEN_HEIGHT, Color.BLACK);
 
@@ -265,6 +344,92 @@ public class DrawAndCut extends Application {
 //        Path outline = outliner.generateOutline();
     }
     
+    /**
+     * Queues the current drawing to be nested on the next sheet.
+     */
+    private void queueCut() {
+        sheetJob.add(drawPane.outlineProperty().get(), 
+                drawPane.holeProperty().get(), drawPane.getInitials());
+        shapesPane.addCut(drawPane.getCut());
+        showQueued();
+    }
+
+    private void showQueued() {
+        int queued = sheetJob.size();
+        controlPane.queueButton().setText(queued == 0 ? "Add to sheet" 
+                : String.format("Add to sheet\n%d queued", queued));
+    }
+
+    /**
+     * Generated programs are archived to the given file and streamed to the
+     * cutter, each on a thread of its own fed while the program is being 
+     * generated. Throws IllegalStateException if the cutter is not ready,
+     * before anything is opened.
+     */
+    private GcodeSink openProgramSink(String archiveName) {
+        Cutter cutter = cutterConnection.getCutter();
+        GcodeSink sequence = cutter == null ? null : cutter.newSequence();
+        List<GcodeSink> sinks = new ArrayList<>();
+        archiver = null;
+        try {
+            archiver = new AsyncGcodeSink(
+                    new FileChannelGcodeSink(new File(archiveName).toPath()),
+                    "G-code archiver");
+            sinks.add(archiver);
+        } catch (IOException ex) {
+            Logger.getLogger(DrawAndCut.class.getName())
+                    .log(Level.SEVERE, null, ex);
+        }
+        if (sequence != null) {
+            sinks.add(new AsyncGcodeSink(sequence, "G-code streamer"));
+        }
+        GcodeSink sink = GcodeSink.tee(sinks);
+        return DISABLE_PEEPHOLE ? sink 
+                : new PeepholeOptimizer(sink, COMPACT_GCODE, VERIFY_PEEPHOLE);
+    }
+
+    /**
+     * Runs the generator off the FX thread, the sink is closed when the
+     * program is complete and aborted when generation fails. Buttons that
+     * generate programs are disabled until the archive is written, so that
+     * only one program is written to it at a time.
+     */
+    private void generateProgram(String name, GcodeSink sink, 
+            Supplier<JobSummary> generator) {
+        generating.set(true);
+        AsyncGcodeSink archive = archiver;
+        new Thread(() -> {
+            try {
+                generate(sink, generator);
+                if (archive != null) {
+                    archive.join();
+                }
+            } catch (InterruptedException ex) {
+                Logger.getLogger(DrawAndCut.class.getName())
+                        .log(Level.SEVERE, null, ex);
+            } finally {
+                Platform.runLater(() -> generating.set(false));
+            }
+        }, name).start();
+    }
+
+    private static void generate(GcodeSink sink, Supplier<JobSummary> generator) {
+        JobSummary summary;
+        try {
+            summary = generator.get();
+            if (sink instanceof PeepholeOptimizer) {
+                ((PeepholeOptimizer) sink).summarize(summary);
+            }
+        } catch (RuntimeException ex) {
+            Logger.getLogger(DrawAndCut.class.getName())
+                    .log(Level.SEVERE, null, ex);
+            sink.abort();
+            return;
+        }
+        sink.close();
+        summary.print();
+    }
+
     private static void reboot() {
         try {
             new ProcessBuilder("reboot", "now").inheritIO().start();
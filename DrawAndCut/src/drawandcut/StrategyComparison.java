@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut;
+
+import static drawandcut.Configuration.*;
+import drawandcut.gcode.DepthStrategy;
+import drawandcut.gcode.PathConverter;
+import drawandcut.path.OutlinerEsri;
+import drawandcut.ui.DrawPane;
+import java.util.Map;
+import java.util.TreeMap;
+import javafx.scene.shape.Path;
+
+/**
+ * Prints the estimated cycle time of every built-in shape for each
+ * {@link DepthStrategy}. Needs the JavaFX toolkit to convert the shapes.
+ *
+ * @author akouznet
+ */
+public class StrategyComparison {
+
+    private final Shapes shapes;
+
+    public StrategyComparison(Shapes shapes) {
+        this.shapes = shapes;
+    }
+
+    public void run() {
+        DepthStrategy[] strategies = DepthStrategy.values();
+        double[] totals = new double[strategies.length];
+        System.out.printf("%-12s", "Shape");
+        for (DepthStrategy strategy : strategies) {
+            System.out.printf("%12s", strategy);
+        }
+        System.out.println("  (estimated minutes)");
+        OutlinerEsri outliner = new OutlinerEsri();
+        for (Map.Entry<String, Shapes.Shape> e : new TreeMap<>(shapes.get()).entrySet()) {
+            Path outline = DrawPane.convertToOutline(
+                    DrawPane.createSVGPath(e.getValue().getSvg(), e.getValue().getSize()),
+                    DrawPane.ImportSource.MODEL, outliner);
+            System.out.printf("%-12s", e.getKey());
+            for (int i = 0; i < strategies.length; i++) {
+                double time = new PathConverter(outline, null, null, 
+                        RPM, FEED, DOC, PLUNGE_FEED, strategies[i], line -> {})
+                        .getGenerator().getEstimatedTime();
+                totals[i] += time;
+                System.out.printf("%12.2f", time);
+            }
+            System.out.println();
+        }
+        System.out.printf("%-12s", "Total");
+        for (double total : totals) {
+            System.out.printf("%12.2f", total);
+        }
+        System.out.println();
+    }
+}
@@ -23,11 +23,21 @@
  */
 package drawandcut.cutter;
 
+import com.willwinder.universalgcodesender.ControllerEventBus;
 import com.willwinder.universalgcodesender.GrblController;
+import com.willwinder.universalgcodesender.GrblKinematicSimulator;
 import com.willwinder.universalgcodesender.listeners.ControllerListener;
 import com.willwinder.universalgcodesender.types.GcodeCommand;
 import static drawandcut.Configuration.*;
+import drawandcut.gcode.GcodeLine;
+import drawandcut.gcode.GcodeSink;
+import drawandcut.gcode.HeightMap;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -35,6 +45,10 @@ import java.util.regex.Pattern;
 import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyBooleanProperty;
 import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.ReadOnlyLongProperty;
+import javafx.beans.property.ReadOnlyLongWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javax.vecmath.Point3d;
 
 /**
@@ -51,6 +65,10 @@ public class Cutter {
     private volatile GrblController grblController;
     private final Runnable toConnect;
     private final ReadOnlyBooleanWrapper ready = new ReadOnlyBooleanWrapper(false);
+    private final ReadOnlyLongWrapper jobEnd = new ReadOnlyLongWrapper(0);
+    private volatile long jobStart, jobCutEnd; // ms, to compare the estimate with the run
+    private final ReadOnlyStringWrapper status = new ReadOnlyStringWrapper("");
+    private final Consumer<String> statusSnapshot = ControllerEventBus.getDefault().snapshot(status::set);
 
     public Cutter(Runnable toConnect) {
         this.toConnect = toConnect;
@@ -62,7 +80,7 @@ public class Cutter {
 
     public void bindToController(GrblController grblController) {
         this.grblController = grblController;
-        this.grblController.setSingleStepMode(true);
+        this.grblController.setSingleStepMode(SINGLE_STEP_STREAMING);
         this.grblController.addListener(listener);
     }
     
@@ -78,15 +96,18 @@ public class Cutter {
         FAILED
     }
     
-    private final String[] PROBE1 = { "G4P0.005", "M05", "G92.1", "G54", "G10 L2 P1 X0 Y0 Z0", "G21", "G49", "G90", "G10 L2 P1 X0 Y0 Z0", "G0 X-2.5 Z-5", "G0 Z-35.000", "G38.2Z-105 F800", "G4P0.005" };
+    private final String[] PROBE1 = { "$$", "G4P0.005", "M05", "G92.1", "G54", "G10 L2 P1 X0 Y0 Z0", "G21", "G49", "G90", "G10 L2 P1 X0 Y0 Z0", "G0 X-2.5 Z-5", "G0 Z-35.000", "G38.2Z-105 F800", "G4P0.005" };
     private final String[] PROBE2 = { "G0 Z-70", "G38.2Z-182.675F200.0", "G4P0.005" };
     private final String[] PROBE3 = { "G0 Z-5", "G0 X-5" };
     private final String COORDINATE_RESET_TEMPLATE = "G10 P0 L20 X220 Y205"; // Z is added based on PRB_Z
     private final String[] COORDINATE_RESET = { COORDINATE_RESET_TEMPLATE };
     private double prbZ = Double.NaN; // Tool measurement Z
+    private static final Pattern PRB = Pattern.compile("\\[PRB:(-?[0-9.]+),(-?[0-9.]+),(-?[0-9.]+):1\\]");
+    private volatile HeightMapProbe heightMapProbe;
 
     private void recoverFromFailure() {
         ready.set(false);
+        heightMapProbe = null;
         try {
             grblController.cancelSend();
             grblController.issueSoftReset();
@@ -103,6 +124,10 @@ public class Cutter {
         }
     }
 
+    /**
+     * Called on the thread of the controller event bus, changes of the
+     * properties bound to the UI are made on the FX thread.
+     */
     private class CutterListener implements ControllerListener {
 
         @Override
@@ -137,6 +162,17 @@ public class Cutter {
                         ready.set(true);
                         break;
                     case READY:
+                        if (DEBUG) {
+                            log("Controller events: " + ControllerEventBus.getDefault());
+                        }
+                        if (jobEnd.get() != 0 && jobCutEnd != 0) {
+                            printJobTime();
+                        }
+                        jobEnd.set(0);
+                        if (heightMapProbe != null) {
+                            heightMapProbe.finish();
+                            heightMapProbe = null;
+                        }
                         ready.set(true);
                         break;
                 }
@@ -153,20 +189,31 @@ public class Cutter {
 
         @Override
         public void commandSent(GcodeCommand command) {
-            log("ControllerListener.commandSent command = "
-                    + command);
+            if (DEBUG) {
+                log("ControllerListener.commandSent command = "
+                        + command);
+            }
         }
 
         @Override
         public void commandComplete(GcodeCommand command) {
             try {
-                log("ControllerListener.commandComplete command = "
-                        + command);
+                if (DEBUG) {
+                    log("ControllerListener.commandComplete command = "
+                            + command);
+                }
                 switch (initState) {
                     case NOT_CONNECTED:
                         initState = InitSequenceState.CONNECTED;
                         grblController.softReset(); // Just in case
                         break;
+                    case READY:
+                        // GRBL acknowledges M5 once the motion before it is
+                        // done, i.e. when the cut ends and homing starts
+                        if (command.getCommandString().trim().equals("M5")) {
+                            jobCutEnd = System.currentTimeMillis();
+                        }
+                        break;
                     case CONNECTED:
                         initState = InitSequenceState.HOMING;
                         grblController.performHomingCycle();
@@ -196,10 +243,20 @@ public class Cutter {
 //            if (type != ControllerListener.MessageType.VERBOSE 
 //                    || msg.startsWith("GrblFeedbackMessage")) {
                 
+            if (DEBUG) {
                 log("CutterConnection verbose = " + verbose + ", " + msg);
+            }
 //            }
-            // parse [PRB:-2.500,-5.000,-84.405:1]
-            if (!verbose && msg.startsWith("[PRB:")) {
+            HeightMapProbe probe = heightMapProbe;
+            if (!verbose && probe != null && msg.startsWith("[PRB:")) {
+                Matcher matcher = PRB.matcher(msg);
+                if (matcher.find()) {
+                    // Probe results are in machine coordinates
+                    probe.add(Double.parseDouble(matcher.group(3)) 
+                            + workCoord.z - machineCoord.z);
+                }
+            } else if (!verbose && msg.startsWith("[PRB:")) {
+                // parse [PRB:-2.500,-5.000,-84.405:1]
                 String pattern = "\\[PRB\\:-[0-9]*\\.[0-9]*,-[0-9]*\\.[0-9]*,(-[0-9]*\\.[0-9]*)\\:1\\]";
                 Matcher matcher = Pattern.compile(pattern).matcher(msg);
                 if (matcher.find()) {
@@ -217,7 +274,7 @@ public class Cutter {
                 performHoming();
             } else if (msg.contains("error") || msg.contains("Error")) {
                 new Exception("The message contains error: " + msg).printStackTrace();
-                recoverFromFailure();
+                Platform.runLater(Cutter.this::recoverFromFailure);
             }
         }
         
@@ -234,13 +291,20 @@ public class Cutter {
         @Override
         public void statusStringListener(String state, Point3d machineCoord,
                 Point3d workCoord) {
-            log("ControllerListener.statusStringListener state = " + state + ", machineCoord = " + machineCoord + ", workCoord = " + workCoord);
+            if (DEBUG) {
+                log("ControllerListener.statusStringListener state = " + state + ", machineCoord = " + machineCoord + ", workCoord = " + workCoord);
+            }
             Cutter.this.state = state;
-            Cutter.this.machineCoord.set(machineCoord);
-            Cutter.this.workCoord.set(workCoord);
+            // GRBL 1.1 has no work position until it reports the offset
+            if (machineCoord != null && workCoord != null) {
+                Cutter.this.machineCoord.set(machineCoord);
+                Cutter.this.workCoord.set(workCoord);
+                statusSnapshot.accept(String.format(Locale.ROOT, "%s\nX %.1f Y %.1f Z %.1f", 
+                        state, workCoord.x, workCoord.y, workCoord.z));
+            }
             
             if ("Alarm".equals(state)) {
-                recoverFromFailure();
+                Platform.runLater(Cutter.this::recoverFromFailure);
             }
         }
         
@@ -252,8 +316,10 @@ public class Cutter {
 
         @Override
         public void commandQueued(GcodeCommand command) {
-            log("ControllerListener.commandQueued command = "
-                    + command);
+            if (DEBUG) {
+                log("ControllerListener.commandQueued command = "
+                        + command);
+            }
             if (command == null) {
                 new Exception("Command is null!").printStackTrace();
             }
@@ -261,6 +327,106 @@ public class Cutter {
 
     }
 
+    /**
+     * Returns a sink which streams generated lines to the controller as they
+     * come, the first line is sent before the rest is generated. The sink
+     * may be fed from any thread.
+     */
+    public GcodeSink newSequence() {
+        if (initState != InitSequenceState.READY) {
+            throw new IllegalStateException("Cutter is not ready!");
+        }
+        ready.set(false);
+        jobCutEnd = 0;
+        return new SequenceSink();
+    }
+
+    /**
+     * Prints how long the cut took next to the estimate shown while it ran,
+     * so the error of the estimate is recorded for every job.
+     */
+    private void printJobTime() {
+        double took = (jobCutEnd - jobStart) / 1000.;
+        double estimated = (jobEnd.get() - jobStart) / 1000.;
+        System.out.println(String.format(Locale.ROOT, 
+                "Job time: cut %.1f s, estimated %.1f s (%+.1f%%)", 
+                took, estimated, 100 * (estimated - took) / took));
+    }
+
+    private class SequenceSink implements GcodeSink {
+
+        private final GrblKinematicSimulator simulator = grblController.createSimulator();
+        private long start;
+        private boolean failed;
+
+        @Override
+        public void accept(GcodeLine line) {
+            if (failed) {
+                return;
+            }
+            try {
+                if (start == 0) {
+                    grblController.beginOpenStreaming();
+                    start = System.currentTimeMillis();
+                    jobStart = start;
+                }
+                String command = line.toString();
+                simulator.addCommand(command);
+                grblController.appendStreamingCommand(command);
+            } catch (Exception ex) {
+                fail(ex);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (failed) {
+                return;
+            }
+            if (start == 0) {
+                Platform.runLater(() -> ready.set(true));
+                return;
+            }
+            long estimate = simulator.estimate();
+            log("Estimated job time = " + estimate + " ms");
+            Platform.runLater(() -> jobEnd.set(start + estimate));
+            grblController.endStreaming();
+        }
+
+        @Override
+        public void abort() {
+            if (failed) {
+                return;
+            }
+            if (start == 0) {
+                Platform.runLater(() -> ready.set(true));
+                return;
+            }
+            stop();
+        }
+
+        private void fail(Exception ex) {
+            Logger.getLogger(Cutter.class.getName()).log(Level.SEVERE, null, ex);
+            stop();
+        }
+
+        /**
+         * The machine is already running the start of the program, so it is
+         * held where it is, then reset and homed again. The reset stops the
+         * spindle and homing lifts the tool, the cutter is not ready until
+         * homing and probing are done.
+         */
+        private void stop() {
+            failed = true;
+            try {
+                grblController.pauseStreaming();
+            } catch (Exception ex) {
+                Logger.getLogger(Cutter.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            Platform.runLater(Cutter.this::recoverFromFailure);
+        }
+    }
+
     public void sendSequence(String[] sequence) {
         if (initState != InitSequenceState.READY) {
             throw new IllegalStateException("Cutter is not ready!");
@@ -278,11 +444,82 @@ public class Cutter {
             grblController.beginStreaming();
         } catch (Exception ex) {
             Logger.getLogger(Cutter.class.getName()).log(Level.SEVERE, null, ex);
-            recoverFromFailure();
+            Platform.runLater(this::recoverFromFailure);
         }
     }
 
+    /**
+     * Probes the surface at every point of the map, the map is passed to the
+     * consumer on the FX thread when all points are probed.
+     */
+    public void probeHeightMap(HeightMap map, Consumer<HeightMap> onProbed) {
+        if (initState != InitSequenceState.READY) {
+            throw new IllegalStateException("Cutter is not ready!");
+        }
+        double clearZ = MATERIAL_BASE_Z + MATERIAL_SIZE_Z + 5;
+        double probeZ = MATERIAL_BASE_Z + MATERIAL_SIZE_Z - HEIGHT_MAP_PROBE_DEPTH;
+        List<String> sequence = new ArrayList<>();
+        sequence.add("G21");
+        sequence.add("G90");
+        for (int[] point : map.probingOrder()) {
+            sequence.add(String.format(Locale.ROOT, "G0Z%.3f", clearZ));
+            sequence.add(String.format(Locale.ROOT, "G0X%.3fY%.3f", 
+                    map.getX(point[0]), map.getY(point[1])));
+            sequence.add(String.format(Locale.ROOT, "G38.2Z%.3fF%.1f", 
+                    probeZ, HEIGHT_MAP_PROBE_FEED));
+        }
+        sequence.add(String.format(Locale.ROOT, "G0Z%.3f", clearZ));
+        heightMapProbe = new HeightMapProbe(map, onProbed);
+        sendSequence(sequence.toArray(new String[sequence.size()]));
+    }
+
+    private static class HeightMapProbe {
+
+        private final HeightMap map;
+        private final Consumer<HeightMap> onProbed;
+        private final List<Double> heights = Collections.synchronizedList(new ArrayList<>());
+
+        HeightMapProbe(HeightMap map, Consumer<HeightMap> onProbed) {
+            this.map = map;
+            this.onProbed = onProbed;
+        }
+
+        void add(double z) {
+            heights.add(z);
+        }
+
+        void finish() {
+            List<int[]> points = map.probingOrder();
+            if (heights.size() != points.size()) {
+                Logger.getLogger(Cutter.class.getName()).log(Level.SEVERE, 
+                        "Probed {0} of {1} height map points", 
+                        new Object[] { heights.size(), points.size() });
+                return;
+            }
+            for (int i = 0; i < points.size(); i++) {
+                map.set(points.get(i)[0], points.get(i)[1], heights.get(i));
+            }
+            onProbed.accept(map);
+        }
+    }
+
+    /**
+     * State and work position last reported by the cutter, updated at most
+     * once per pulse.
+     */
+    public ReadOnlyStringProperty status() {
+        return status.getReadOnlyProperty();
+    }
+
     public ReadOnlyBooleanProperty ready() {
         return ready.getReadOnlyProperty();
     }    
+
+    /**
+     * Estimated wall clock time in milliseconds when the job being cut 
+     * finishes, 0 when no job is running.
+     */
+    public ReadOnlyLongProperty jobEnd() {
+        return jobEnd.getReadOnlyProperty();
+    }
 }
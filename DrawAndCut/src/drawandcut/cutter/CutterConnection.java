@@ -43,7 +43,7 @@ public class CutterConnection {
         try {
             GrblController grblController = new GrblController();
             cutter.bindToController(grblController);
-            Boolean openCommPort = grblController.openCommPort(Configuration.PORT_NAME, 115200);
+            Boolean openCommPort = grblController.openCommPort(Configuration.PORT_NAME, Configuration.BAUD_RATE);
             if (openCommPort != true) {
                 throw new IllegalStateException("Connection to cutter failed to open. "
                         + "Use -DdisableCutter=true to run without cutter. "
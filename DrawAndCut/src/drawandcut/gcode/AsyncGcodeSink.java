@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.gcode;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Passes lines to another sink on a thread of its own through a bounded
+ * queue. The producer only waits when the consumer falls more than
+ * {@link #CAPACITY} lines behind. Lines are copied into pooled
+ * {@link GcodeLine}s that go back to the pool once the target has seen them,
+ * so nothing is allocated per line. A failure of the target sink is logged
+ * and the rest of the program is dropped for that sink only.
+ *
+ * @author akouznet
+ */
+public class AsyncGcodeSink implements GcodeSink {
+
+    public static final int CAPACITY = 1024;
+
+    private static final GcodeLine END = new GcodeLine();
+    private static final GcodeLine ABORT = new GcodeLine();
+
+    private final BlockingQueue<GcodeLine> queue = new ArrayBlockingQueue<>(CAPACITY);
+    // Queued lines plus the ones held by the producer and the consumer
+    private final BlockingQueue<GcodeLine> pool = new ArrayBlockingQueue<>(CAPACITY + 2);
+    private final GcodeSink target;
+    private final Thread consumer;
+    private volatile boolean aborted;
+
+    public AsyncGcodeSink(GcodeSink target, String name) {
+        this.target = target;
+        consumer = new Thread(this::drain, name);
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @Override
+    public void accept(GcodeLine line) {
+        if (!aborted) {
+            GcodeLine copy = pool.poll();
+            put((copy == null ? new GcodeLine() : copy).set(line));
+        }
+    }
+
+    @Override
+    public void close() {
+        put(END);
+    }
+
+    @Override
+    public void abort() {
+        aborted = true;
+        queue.clear();
+        put(ABORT);
+    }
+
+    /**
+     * Waits until the target has been closed or aborted.
+     */
+    public void join() throws InterruptedException {
+        consumer.join();
+    }
+
+    private void put(GcodeLine line) {
+        try {
+            queue.put(line);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing G-code", ex);
+        }
+    }
+
+    private void drain() {
+        boolean failed = false;
+        while (true) {
+            GcodeLine line;
+            try {
+                line = queue.take();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (line == ABORT) {
+                target.abort();
+                return;
+            }
+            if (failed) {
+                if (line == END) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                if (line == END) {
+                    target.close();
+                    return;
+                }
+                target.accept(line);
+                pool.offer(line);
+            } catch (RuntimeException ex) {
+                Logger.getLogger(AsyncGcodeSink.class.getName())
+                        .log(Level.SEVERE, "Dropping the rest of the program", ex);
+                failed = true;
+            }
+        }
+    }
+}
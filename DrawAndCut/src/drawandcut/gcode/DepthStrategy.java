@@ -0,0 +1,45 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.gcode;
+
+/**
+ * Order in which the depth passes of a path are cut.
+ *
+ * @author akouznet
+ */
+public enum DepthStrategy {
+    /**
+     * Every contour at one depth before going deeper.
+     */
+    LAYER,
+    /**
+     * Every depth of one closed contour before moving to the next contour.
+     */
+    CONTOUR,
+    /**
+     * Closed contours descend continuously, one lap per pass, followed by a 
+     * flat lap at the bottom. Open strokes are cut like {@link #CONTOUR}.
+     */
+    RAMP
+}
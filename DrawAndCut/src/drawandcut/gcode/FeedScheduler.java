@@ -0,0 +1,244 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.gcode;
+
+import drawandcut.path.Contour;
+import java.util.List;
+
+/**
+ * Scales the feed along a contour by how hard the tool works there. 
+ * <p>
+ * Engagement: every pass is a slot as wide as the tool unless a contour
+ * cut before it passes closer than a tool diameter. Then only a strip as 
+ * wide as the distance between the two tool centres is left to cut. A cut 
+ * narrower than half the tool makes thinner chips, so the feed is raised by
+ * the radial chip thinning factor 1 / (2 sqrt(w/D (1 - w/D))), up to the 
+ * maximum factor, keeping the largest chip as thick as in a slot. Full 
+ * slots are never cut faster than the nominal feed.
+ * <p>
+ * Curvature: the wall on the outside of a turn is longer than the path of 
+ * the tool center, so the chip load grows by (R + r) / R as the turn gets 
+ * tighter and peaks in sharp corners. The feed is scaled down by the same 
+ * ratio, down to the minimum factor.
+ * <p>
+ * The two effects are multiplied, which keeps the chip load at or below 
+ * the nominal one for a slot and is an approximation for narrower cuts.
+ *
+ * @author akouznet
+ */
+public class FeedScheduler {
+
+    /**
+     * Turns sharper than this are corners rather than part of a flattened
+     * curve.
+     */
+    static final double SHARP_TURN = Math.toRadians(30);
+    /**
+     * Feed factors are rounded down to multiples of this, so that small
+     * variations in curvature do not change the feed.
+     */
+    private static final double STEP = 0.05;
+
+    private final double toolRadius;
+    private final double minFactor;
+    private final double maxFactor;
+
+    /**
+     * @param minFactor lowest fraction of the nominal feed, used in corners
+     * @param maxFactor highest fraction of the nominal feed, only used where
+     * the cut is much narrower than a slot
+     */
+    public FeedScheduler(double toolDiameter, double minFactor, double maxFactor) {
+        if (minFactor <= 0 || minFactor > 1 || maxFactor < 1) {
+            throw new IllegalArgumentException("Invalid feed factors: " 
+                    + minFactor + " to " + maxFactor);
+        }
+        this.toolRadius = toolDiameter / 2;
+        this.minFactor = minFactor;
+        this.maxFactor = maxFactor;
+    }
+
+    /**
+     * Feed factor on a path of the given radius cutting a strip as wide as
+     * allowed by the engagement factor.
+     * @param engagement factor from {@link #engagement(double)}
+     */
+    public double factor(double radius, double engagement) {
+        if (Double.isInfinite(radius)) {
+            return quantize(engagement);
+        }
+        return quantize(engagement * radius / (radius + toolRadius));
+    }
+
+    /**
+     * Chip thinning factor for a cut of the given width, 1 for a slot.
+     */
+    double engagement(double width) {
+        double ratio = width / (2 * toolRadius);
+        if (ratio >= 0.5) {
+            return 1;
+        }
+        if (ratio <= 0) {
+            return maxFactor;
+        }
+        return Math.min(maxFactor, 1 / (2 * Math.sqrt(ratio * (1 - ratio))));
+    }
+
+    /**
+     * Schedule for a contour cut after the given contours at the same 
+     * depth.
+     */
+    public Schedule schedule(Contour contour, List<Contour> cutBefore) {
+        int size = contour.size();
+        double[] engagement = new double[Math.max(size - 1, 0)];
+        for (int i = 0; i < size - 1; i++) {
+            engagement[i] = engagement(width(contour, i, cutBefore));
+        }
+        double[] factors = new double[size];
+        for (int i = 0; i < size; i++) {
+            int prev = i > 0 ? i - 1 : contour.isClosed() ? size - 2 : -1;
+            int next = i < size - 1 ? i + 1 : contour.isClosed() ? 1 : -1;
+            double e = Math.min(i > 0 ? engagement[i - 1] : maxFactor, 
+                    i < size - 1 ? engagement[i] : maxFactor);
+            factors[i] = prev < 0 || next < 0 ? factor(Double.POSITIVE_INFINITY, e)
+                    : factor(turnRadius(contour, prev, i, next), e);
+        }
+        return new Schedule(engagement, factors);
+    }
+
+    /**
+     * Widest cut along segment i, sampled every half tool radius.
+     */
+    private double width(Contour contour, int i, List<Contour> cutBefore) {
+        double diameter = 2 * toolRadius;
+        double x0 = contour.getX(i), y0 = contour.getY(i);
+        double dx = contour.getX(i + 1) - x0, dy = contour.getY(i + 1) - y0;
+        int samples = (int) Math.ceil(Math.hypot(dx, dy) / (toolRadius / 2));
+        double widest = 0;
+        for (int k = 0; k <= samples && widest < diameter; k++) {
+            double t = samples == 0 ? 0 : (double) k / samples;
+            double x = x0 + dx * t, y = y0 + dy * t;
+            double nearest = diameter;
+            for (Contour other : cutBefore) {
+                nearest = Math.min(nearest, distance(other, x, y, nearest));
+            }
+            widest = Math.max(widest, nearest);
+        }
+        return widest;
+    }
+
+    /**
+     * Distance from a point to the contour, or limit if it is further.
+     */
+    private static double distance(Contour contour, double x, double y, double limit) {
+        double nearest = limit;
+        for (int i = 0; i < contour.size() - 1; i++) {
+            double ax = contour.getX(i), ay = contour.getY(i);
+            double bx = contour.getX(i + 1), by = contour.getY(i + 1);
+            if (Math.min(ax, bx) - x > nearest || x - Math.max(ax, bx) > nearest
+                    || Math.min(ay, by) - y > nearest || y - Math.max(ay, by) > nearest) {
+                continue;
+            }
+            double dx = bx - ax, dy = by - ay;
+            double px = x - ax, py = y - ay;
+            double length2 = dx * dx + dy * dy;
+            double t = length2 == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / length2));
+            nearest = Math.min(nearest, Math.hypot(px - t * dx, py - t * dy));
+        }
+        return nearest;
+    }
+
+    /**
+     * Radius of the circle the segments around a point approximate, zero 
+     * for a sharp corner.
+     */
+    private static double turnRadius(Contour contour, int prev, int i, int next) {
+        double inX = contour.getX(i) - contour.getX(prev);
+        double inY = contour.getY(i) - contour.getY(prev);
+        double outX = contour.getX(next) - contour.getX(i);
+        double outY = contour.getY(next) - contour.getY(i);
+        double length = Math.min(Math.hypot(inX, inY), Math.hypot(outX, outY));
+        double turn = Math.abs(Math.atan2(inX * outY - inY * outX, inX * outX + inY * outY));
+        if (length == 0 || turn == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (turn > SHARP_TURN) {
+            return 0;
+        }
+        return length / (2 * Math.tan(turn / 2));
+    }
+
+    private double quantize(double factor) {
+        double steps = Math.floor(factor / STEP + 1e-9);
+        return Math.max(minFactor, Math.min(maxFactor, steps * STEP));
+    }
+
+    /**
+     * Distance before and after a slow point that is cut at its feed.
+     */
+    public double getSlowdownLength() {
+        return 2 * toolRadius;
+    }
+
+    /**
+     * Feed factors along one contour.
+     */
+    public final class Schedule {
+
+        private final double[] engagement;
+        private final double[] factors;
+
+        private Schedule(double[] engagement, double[] factors) {
+            this.engagement = engagement;
+            this.factors = factors;
+        }
+
+        /**
+         * Factor at point i, from the turn there and the segments around it.
+         */
+        public double atPoint(int i) {
+            return factors[i];
+        }
+
+        /**
+         * Factor along the straight segment from point i to point i + 1,
+         * away from its ends.
+         */
+        public double alongSegment(int i) {
+            return factor(Double.POSITIVE_INFINITY, engagement[i]);
+        }
+
+        /**
+         * Factor on an arc of the given radius replacing the segments 
+         * between points from and to.
+         */
+        public double onArc(int from, int to, double radius) {
+            double e = maxFactor;
+            for (int i = from; i < to; i++) {
+                e = Math.min(e, engagement[i]);
+            }
+            return Math.min(factor(radius, e), Math.min(factors[from], factors[to]));
+        }
+    }
+}
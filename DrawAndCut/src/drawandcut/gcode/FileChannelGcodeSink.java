@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.gcode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the program to a file through a reusable direct buffer. A failure
+ * to write is logged and disables the sink, it never interrupts generation.
+ *
+ * @author akouznet
+ */
+public class FileChannelGcodeSink implements GcodeSink {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Path file;
+    private FileChannel channel;
+
+    public FileChannelGcodeSink(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Override
+    public void accept(GcodeLine line) {
+        if (channel == null) {
+            return;
+        }
+        if (buffer.remaining() < line.length() + 1) {
+            flush();
+        }
+        buffer.put(line.array(), 0, line.length()).put((byte) '\n');
+    }
+
+    @Override
+    public void close() {
+        if (channel == null) {
+            return;
+        }
+        flush();
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            Logger.getLogger(FileChannelGcodeSink.class.getName())
+                    .log(Level.SEVERE, "Cannot close " + file, ex);
+        }
+        channel = null;
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(FileChannelGcodeSink.class.getName())
+                    .log(Level.SEVERE, "Cannot write " + file, ex);
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+            }
+            channel = null;
+        }
+        buffer.clear();
+    }
+}
@@ -24,8 +24,6 @@
 package drawandcut.gcode;
 
 import drawandcut.Configuration;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -41,19 +39,49 @@ public class GCodeGenerator {
     private static final double TOP_Z = Configuration.MATERIAL_BASE_Z + Configuration.MATERIAL_SIZE_Z;
     private static final double BOTTOM_Z = Configuration.MATERIAL_BASE_Z;
     private static final double SAFE_Z = TOP_Z + 5;
+    private static final double BYTES_PER_MINUTE = Configuration.BAUD_RATE / 10. * 60;
     
-    private final List<String> output = new ArrayList<>();
+    private final GcodeSink sink;
+    private final GcodeLine line = new GcodeLine();
+    private final boolean compact;
     
     private double x = EMPTY, y = EMPTY, z = EMPTY, f = EMPTY, rpm = EMPTY;
+    private double pendingFeed = EMPTY;
+    private double nominalZ = EMPTY;
+    private HeightMap heightMap;
+    private long lineCount, byteCount, verboseByteCount;
+    private double cutLength, rapidLength, zTravel, estimatedTime;
     private Units units = null;
     private Coordinates coordinates = null;
     private MovementMode movementMode = null;
 
     public enum Units { MM, INCHES };
     public enum Coordinates { ABSOLUTE, RELATIVE };
-    public enum MovementMode { RAPID, LINEAR };
+    public enum MovementMode { 
+        RAPID("G0"), LINEAR("G1"), ARC_CW("G2"), ARC_CCW("G3");
+        
+        private final String code;
+
+        private MovementMode(String code) {
+            this.code = code;
+        }
+    };
 
     public GCodeGenerator() {
+        this(new ListGcodeSink());
+    }
+
+    public GCodeGenerator(GcodeSink sink) {
+        this(sink, false);
+    }
+
+    /**
+     * @param compact leave out repeated motion modes, unchanged coordinates
+     * and redundant feeds, and strip trailing zeros
+     */
+    public GCodeGenerator(GcodeSink sink, boolean compact) {
+        this.sink = sink;
+        this.compact = compact;
     }
     
     public void init(int targetRPM) {
@@ -72,11 +100,7 @@ public class GCodeGenerator {
     }
     
     public void rapid(double x, double y, double z) {
-        output.add("G0" + buildXYZF(x, y, z));
-        this.x = Double.isNaN(x) ? this.x : x; 
-        this.y = Double.isNaN(y) ? this.y : y; 
-        this.z = Double.isNaN(z) ? this.z : z;         
-        this.movementMode = MovementMode.RAPID;
+        move(MovementMode.RAPID, x, y, z, EMPTY, EMPTY, EMPTY);
     }
 
     public void linearZ(double z) {
@@ -96,31 +120,137 @@ public class GCodeGenerator {
     }
 
     public void linear(double x, double y, double z, double f) {
-        output.add("G1" + buildXYZF(x, y, z, f));
+        move(MovementMode.LINEAR, x, y, z, EMPTY, EMPTY, f);
+    }
+
+    /**
+     * Arc in the XY plane from the current position to (x, y) around the
+     * given absolute center.
+     */
+    public void arc(double x, double y, double centerX, double centerY, boolean clockwise) {
+        arc(x, y, EMPTY, centerX, centerY, clockwise);
+    }
+
+    /**
+     * Helical arc when z differs from the current Z.
+     */
+    public void arc(double x, double y, double z, double centerX, double centerY, boolean clockwise) {
+        if (Double.isNaN(this.x) || Double.isNaN(this.y)) {
+            throw new IllegalStateException("Arc start position is unknown");
+        }
+        move(clockwise ? MovementMode.ARC_CW : MovementMode.ARC_CCW, 
+                x, y, z, centerX - this.x, centerY - this.y, EMPTY);
+    }
+
+    /**
+     * Offsets Z of all following moves by the height map, feed moves are
+     * split so that they follow the surface between the grid points. Arcs
+     * cannot be compensated.
+     */
+    public void setHeightMap(HeightMap heightMap) {
+        this.heightMap = heightMap;
+    }
+
+    private void move(MovementMode mode, double x, double y, double z, 
+            double i, double j, double f) {
+        double toX = Double.isNaN(x) ? this.x : x;
+        double toY = Double.isNaN(y) ? this.y : y;
+        double toZ = Double.isNaN(z) ? nominalZ : z;
+        if (heightMap == null || Double.isNaN(toX) || Double.isNaN(toY) || Double.isNaN(toZ)) {
+            // Nothing to compensate until the position is known
+            emitMove(mode, x, y, z, i, j, f);
+            nominalZ = toZ;
+            return;
+        }
+        if (!Double.isNaN(i)) {
+            throw new IllegalStateException("Arcs cannot follow a height map");
+        }
+        int segments = mode == MovementMode.RAPID || Double.isNaN(nominalZ) ? 1 
+                : Math.max(1, (int) Math.ceil(Math.hypot(toX - this.x, toY - this.y) 
+                        / heightMap.getSegmentLength()));
+        double fromX = this.x, fromY = this.y, fromZ = nominalZ;
+        for (int k = 1; k <= segments; k++) {
+            double t = (double) k / segments;
+            double sx = k == segments ? toX : fromX + (toX - fromX) * t;
+            double sy = k == segments ? toY : fromY + (toY - fromY) * t;
+            double sz = k == segments ? toZ : fromZ + (toZ - fromZ) * t;
+            emitMove(mode, segments == 1 ? x : sx, segments == 1 ? y : sy, 
+                    sz + heightMap.offset(sx, sy), EMPTY, EMPTY, k == 1 ? f : EMPTY);
+        }
+        nominalZ = toZ;
+    }
+
+    private void emitMove(MovementMode mode, double x, double y, double z, 
+            double i, double j, double f) {
+        boolean arc = !Double.isNaN(i);
+        verboseByteCount += 3 + wordLength(x) + wordLength(y) + wordLength(z)
+                + wordLength(i) + wordLength(j) + wordLength(f);
+        if (!Double.isNaN(f)) {
+            pendingFeed = EMPTY;
+        }
+        double feed = Double.isNaN(f) ? pendingFeed : f;
+        line.clear();
+        if (!compact || mode != movementMode) {
+            line.append(mode.code);
+        }
+        boolean moved = appendAxis('X', x, this.x)
+                | appendAxis('Y', y, this.y)
+                | appendAxis('Z', z, this.z);
+        if (arc) {
+            // Offsets are not modal
+            appendWord('I', i);
+            appendWord('J', j);
+            moved = true;
+        }
+        if (compact && !moved) {
+            // Zero-length move, only a feed change has to be remembered
+            if (!Double.isNaN(feed) && !same(feed, this.f)) {
+                pendingFeed = feed;
+            }
+            return;
+        }
+        boolean feedChanged = !Double.isNaN(feed) && !(compact && same(feed, this.f));
+        if (feedChanged) {
+            appendWord('F', feed);
+        }
+        emit();
+        double length = arc 
+                ? Math.hypot(arcLength(x, y, i, j, mode == MovementMode.ARC_CW), 
+                        distance(EMPTY, EMPTY, z))
+                : distance(x, y, z);
+        zTravel += Double.isNaN(z) || Double.isNaN(this.z) ? 0 : Math.abs(z - this.z);
         this.x = Double.isNaN(x) ? this.x : x; 
         this.y = Double.isNaN(y) ? this.y : y; 
         this.z = Double.isNaN(z) ? this.z : z; 
-        this.f = Double.isNaN(f) ? this.f : f; 
-        this.movementMode = MovementMode.LINEAR;
+        this.f = feedChanged ? feed : this.f;
+        if (mode == MovementMode.RAPID) {
+            rapidLength += length;
+            estimate(length / Configuration.RAPID_FEED);
+        } else {
+            cutLength += length;
+            estimate(length / this.f);
+        }
+        this.pendingFeed = EMPTY;
+        this.movementMode = mode;
     }
 
     public void unitsInches() {
-        output.add("G20");
+        emit("G20");
         this.units = Units.INCHES;
     }
     
     public void unitsMillimeters() {
-        output.add("G21");
+        emit("G21");
         this.units = Units.MM;
     }
     
     public void coordinatesAbsolute() {
-        output.add("G90");
+        emit("G90");
         this.coordinates = Coordinates.ABSOLUTE;
     }
     
     public void coordinatesRelative() {
-        output.add("G91");
+        emit("G91");
         this.coordinates = Coordinates.RELATIVE;
     }
     
@@ -128,46 +258,154 @@ public class GCodeGenerator {
         if (rpm > MAX_RPM || rpm < MIN_RPM) {
             throw new IllegalArgumentException("Spindle rpm is out of range " + MIN_RPM + " to " + MAX_RPM + ": " + rpm);
         }
-        output.add("M3 S" + rpm);
+        line.clear().append("M3 S").append(rpm);
+        verboseByteCount += line.length() + 1;
+        emit();
         this.rpm = rpm;
     }
     
     public void spindleStop() {
-        output.add("M5");
+        emit("M5");
         this.rpm = 0;
     }
     
     public void programEnd() {
-        output.add("M30");
+        emit("M30");
         resetState();
     }
     
     public void goHome() {
-        output.add("$H");
+        emit("$H");
         resetState();
     }
     
     private void resetState() {
-        this.x = this.y = this.z = this.f = this.rpm = EMPTY;
+        this.x = this.y = this.z = this.f = this.rpm = this.pendingFeed = this.nominalZ = EMPTY;
         this.units = null;
         this.coordinates = null;
         this.movementMode = null;
     }
 
     void setFeed(double feed) {
-        output.add(buildXYZF(EMPTY, EMPTY, EMPTY, feed));
+        if (compact) {
+            // Sent along with the next feed move
+            verboseByteCount += wordLength(feed) + 1;
+            pendingFeed = same(feed, this.f) ? EMPTY : feed;
+            return;
+        }
+        line.clear();
+        appendWord('F', feed);
+        emit();
         this.f = feed;
     }
     
-    private String buildXYZF(double... coords) {
-        StringBuilder sb = new StringBuilder(20);
-        String[] names = { "X", "Y", "Z", "F" };
-        for (int i = 0; i < coords.length && i < names.length; i++) {
-            if (!Double.isNaN(coords[i])) {
-                sb.append(names[i]).append(String.format("%.3f", coords[i]));
-            }
+    private double distance(double x, double y, double z) {
+        return Math.sqrt(square(x, this.x) + square(y, this.y) + square(z, this.z));
+    }
+
+    private static double square(double value, double current) {
+        double d = Double.isNaN(value) || Double.isNaN(current) ? 0 : value - current;
+        return d * d;
+    }
+
+    private double arcLength(double x, double y, double i, double j, boolean clockwise) {
+        double start = Math.atan2(-j, -i);
+        double end = Math.atan2(y - this.y - j, x - this.x - i);
+        double sweep = clockwise ? start - end : end - start;
+        if (sweep <= 0) {
+            sweep += 2 * Math.PI;
         }
-        return sb.toString();
+        return sweep * Math.hypot(i, j);
+    }
+
+    /**
+     * Adds the time of the line just emitted which is limited by either the
+     * motion or the serial transfer of the line.
+     */
+    private void estimate(double motionTime) {
+        estimatedTime += Math.max(Double.isNaN(motionTime) ? 0 : motionTime, 
+                (line.length() + 1) / BYTES_PER_MINUTE);
+    }
+
+    private boolean appendAxis(char letter, double value, double current) {
+        if (Double.isNaN(value) || (compact && same(value, current))) {
+            return false;
+        }
+        appendWord(letter, value);
+        return true;
+    }
+
+    private void appendWord(char letter, double value) {
+        line.append(letter);
+        if (compact) {
+            line.appendCompactFixed(GcodeLine.toMicrons(value));
+        } else {
+            line.appendFixed(GcodeLine.toMicrons(value));
+        }
+    }
+
+    private static int wordLength(double value) {
+        return Double.isNaN(value) ? 0 : 1 + GcodeLine.fixedLength(GcodeLine.toMicrons(value));
+    }
+
+    private static boolean same(double value, double current) {
+        return !Double.isNaN(current) 
+                && GcodeLine.toMicrons(value) == GcodeLine.toMicrons(current);
+    }
+
+    private void emit(String command) {
+        line.clear().append(command);
+        verboseByteCount += line.length() + 1;
+        emit();
+    }
+
+    private void emit() {
+        lineCount++;
+        byteCount += line.length() + 1;
+        sink.accept(line);
+    }
+
+    /**
+     * Adds line and byte counts of the program generated so far.
+     */
+    public void summarize(JobSummary summary) {
+        summary.add("Cut %.0f mm, rapid %.0f mm, Z travel %.0f mm, estimated time %.1f min", 
+                cutLength, rapidLength, zTravel, estimatedTime);
+        if (compact) {
+            summary.add("G-code: %d lines, %d bytes (%d bytes verbose, %.1f%% saved)",
+                    lineCount, byteCount, verboseByteCount,
+                    100. * (verboseByteCount - byteCount) / verboseByteCount);
+        } else {
+            summary.add("G-code: %d lines, %d bytes", lineCount, byteCount);
+        }
+    }
+
+    public double getCutLength() {
+        return cutLength;
+    }
+
+    public double getRapidLength() {
+        return rapidLength;
+    }
+
+    public double getZTravel() {
+        return zTravel;
+    }
+
+    /**
+     * Minutes at programmed feeds and the rapid rate, ignoring acceleration.
+     */
+    public double getEstimatedTime() {
+        return estimatedTime;
+    }
+
+    /**
+     * Time the same estimate gives for a line move between two points at the
+     * current feed.
+     */
+    public double estimateLinear(double fromX, double fromY, double x, double y) {
+        int bytes = 3 + wordLength(x) + wordLength(y);
+        return Math.max(Math.hypot(x - fromX, y - fromY) / f, bytes / BYTES_PER_MINUTE);
     }
 
     public double getSafeZ() {
@@ -183,7 +421,37 @@ public class GCodeGenerator {
     }
 
     public List<String> getOutput() {
-        return Collections.unmodifiableList(output);
+        if (sink instanceof ListGcodeSink) {
+            return ((ListGcodeSink) sink).getLines();
+        }
+        throw new IllegalStateException("Output is streamed to "
+                + sink.getClass().getSimpleName());
+    }
+
+    public GcodeSink getSink() {
+        return sink;
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Bytes sent to the sink, counting one line terminator per line.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Bytes the same program takes without compaction.
+     */
+    public long getVerboseByteCount() {
+        return verboseByteCount;
     }
 
     public double getX() {
@@ -194,8 +462,11 @@ public class GCodeGenerator {
         return y;
     }
 
+    /**
+     * Z before height map compensation.
+     */
     public double getZ() {
-        return z;
+        return nominalZ;
     }
 
     public double getF() {
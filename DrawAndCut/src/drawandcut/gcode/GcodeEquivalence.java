@@ -0,0 +1,196 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.gcode;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
+import com.willwinder.universalgcodesender.types.PointSegment;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.vecmath.Point3d;
+
+/**
+ * Checks that two programs describe the same motion by replaying both through
+ * {@link GcodeParser} and comparing the resulting {@link PointSegment} lists.
+ * Segments that don't move the tool (left behind by lines such as
+ * {@code M5} which the parser treats as a repeated motion command) are
+ * ignored, the modal feed is compared for every remaining segment.
+ *
+ * @author akouznet
+ */
+public class GcodeEquivalence {
+
+    private static final double EPSILON = 1e-9; // mm
+    private static final double SWEPT_EPSILON = 1e-9; // sine of the angle between merged segments
+
+    /**
+     * @throws IllegalStateException describing the first difference found
+     */
+    public static void check(List<String> expected, List<String> actual) {
+        List<PointSegment> e = replay(expected);
+        List<PointSegment> a = replay(actual);
+        for (int i = 0; i < Math.min(e.size(), a.size()); i++) {
+            if (!same(e.get(i), a.get(i))) {
+                throw new IllegalStateException("Segment " + i + " differs: "
+                        + describe(e.get(i)) + " vs " + describe(a.get(i)));
+            }
+        }
+        if (e.size() != a.size()) {
+            throw new IllegalStateException("Segment count differs: "
+                    + e.size() + " vs " + a.size());
+        }
+    }
+
+    /**
+     * Like {@link #check(List, List)} but consecutive straight moves of the
+     * same kind and feed that continue along one line count as one move, 
+     * so programs that sweep the same geometry with a different number of 
+     * segments are equivalent.
+     *
+     * @throws IllegalStateException describing the first difference found
+     */
+    public static void checkSwept(List<String> expected, List<String> actual) {
+        List<PointSegment> e = sweep(replay(expected));
+        List<PointSegment> a = sweep(replay(actual));
+        for (int i = 0; i < Math.min(e.size(), a.size()); i++) {
+            if (!same(e.get(i), a.get(i))) {
+                throw new IllegalStateException("Swept segment " + i + " differs: "
+                        + describe(e.get(i)) + " vs " + describe(a.get(i)));
+            }
+        }
+        if (e.size() != a.size()) {
+            throw new IllegalStateException("Swept segment count differs: "
+                    + e.size() + " vs " + a.size());
+        }
+    }
+
+    /**
+     * Merges runs of collinear straight segments. The first segment is
+     * never extended because where it starts is not known.
+     */
+    static List<PointSegment> sweep(List<PointSegment> segments) {
+        List<PointSegment> result = new ArrayList<>();
+        Point3d start = null;
+        Point3d runStart = null;
+        for (PointSegment ps : segments) {
+            PointSegment last = result.isEmpty() ? null : result.get(result.size() - 1);
+            if (last != null && runStart != null && !last.isArc() && !ps.isArc()
+                    && last.isFastTraverse() == ps.isFastTraverse()
+                    && Double.compare(last.getSpeed(), ps.getSpeed()) == 0
+                    && continues(runStart, last.point(), ps.point())) {
+                result.set(result.size() - 1, ps);
+            } else {
+                result.add(ps);
+                runStart = start;
+            }
+            start = new Point3d(ps.point());
+        }
+        return result;
+    }
+
+    private static boolean continues(Point3d a, Point3d b, Point3d c) {
+        double ux = b.x - a.x, uy = b.y - a.y, uz = b.z - a.z;
+        double vx = c.x - b.x, vy = c.y - b.y, vz = c.z - b.z;
+        double cross = Math.sqrt(Math.pow(uy * vz - uz * vy, 2) 
+                + Math.pow(uz * vx - ux * vz, 2) + Math.pow(ux * vy - uy * vx, 2));
+        double length = Math.sqrt(vx * vx + vy * vy + vz * vz) 
+                * Math.sqrt(ux * ux + uy * uy + uz * uz);
+        return cross <= SWEPT_EPSILON * length && ux * vx + uy * vy + uz * vz > 0;
+    }
+
+    static List<PointSegment> replay(List<String> lines) {
+        GcodeParser parser = new GcodeParser();
+        List<PointSegment> result = new ArrayList<>();
+        Point3d last = new Point3d(parser.getCurrentPoint());
+        double feed = Double.NaN;
+        for (String line : lines) {
+            List<String> args = GcodePreprocessorUtils.splitCommand(
+                    GcodePreprocessorUtils.removeComment(line));
+            double f = GcodePreprocessorUtils.parseCoord(args, 'F');
+            feed = Double.isNaN(f) ? feed : f;
+            PointSegment ps = parser.addCommand(args);
+            if (ps == null) {
+                continue;
+            }
+            if (ps.isArc() || ps.point().distance(last) > EPSILON) {
+                ps.setSpeed(ps.isFastTraverse() ? Double.NaN : feed);
+                result.add(ps);
+            }
+            last = new Point3d(ps.point());
+        }
+        return result;
+    }
+
+    private static boolean same(PointSegment e, PointSegment a) {
+        if (e.isFastTraverse() != a.isFastTraverse() || e.isArc() != a.isArc()
+                || e.point().distance(a.point()) > EPSILON) {
+            return false;
+        }
+        if (!e.isFastTraverse() && Double.compare(e.getSpeed(), a.getSpeed()) != 0) {
+            return false;
+        }
+        return !e.isArc() || (e.isClockwise() == a.isClockwise()
+                && e.center().distance(a.center()) <= EPSILON);
+    }
+
+    private static String describe(PointSegment ps) {
+        Point3d p = ps.point();
+        return (ps.isFastTraverse() ? "rapid" : ps.isArc() 
+                        ? (ps.isClockwise() ? "cw arc" : "ccw arc") : "linear")
+                + " to (" + p.x + ", " + p.y + ", " + p.z + ")"
+                + (ps.isFastTraverse() ? "" : " F" + ps.getSpeed());
+    }
+
+    /**
+     * Compares two G-code files and prints their sizes. With {@code -swept}
+     * the files only have to sweep the same geometry.
+     */
+    public static void main(String[] args) throws IOException {
+        boolean swept = args.length == 3 && args[0].equals("-swept");
+        if (args.length != 2 && !swept) {
+            System.err.println("Usage: GcodeEquivalence [-swept] <expected.nc> <actual.nc>");
+            System.exit(2);
+        }
+        if (swept) {
+            args = Arrays.copyOfRange(args, 1, 3);
+        }
+        List<String> expected = Files.readAllLines(Paths.get(args[0]), StandardCharsets.US_ASCII);
+        List<String> actual = Files.readAllLines(Paths.get(args[1]), StandardCharsets.US_ASCII);
+        if (swept) {
+            checkSwept(expected, actual);
+        } else {
+            check(expected, actual);
+        }
+        long expectedBytes = Files.size(Paths.get(args[0]));
+        long actualBytes = Files.size(Paths.get(args[1]));
+        System.out.printf("Equivalent. %d lines, %d bytes vs %d lines, %d bytes (%.1f%% saved)\n",
+                expected.size(), expectedBytes, actual.size(), actualBytes,
+                100. * (expectedBytes - actualBytes) / expectedBytes);
+    }
+}
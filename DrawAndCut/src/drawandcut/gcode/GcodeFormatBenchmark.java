@@ -0,0 +1,200 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.gcode;
+
+import com.sun.management.ThreadMXBean;
+import com.willwinder.universalgcodesender.types.PointSegment;
+import drawandcut.Configuration;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+import javax.vecmath.Point3d;
+
+/**
+ * Compares {@link GCodeGenerator} writing into its reused {@link GcodeLine}
+ * with building every line as a string with {@code String.format}, the way
+ * programs were generated before. Both write the moves of the same reference
+ * job, either a program given on the command line or a built in profile cut,
+ * and the throughput and the bytes allocated per line are printed.
+ *
+ * @author akouznet
+ */
+public class GcodeFormatBenchmark {
+
+    private static final int RAPID = 0, LINEAR = 1, ARC_CW = 2, ARC_CCW = 3;
+    private static final String[] CODES = { "G0", "G1", "G2", "G3" };
+    private static final int SEGMENTS_PER_LAP = 720;
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int ROUNDS = 100;
+
+    /**
+     * Moves as {mode, x, y, z, feed, centerX, centerY}, the feed is NaN when
+     * it doesn't change.
+     */
+    private final List<double[]> moves;
+    private long bytes; // keeps the output from being optimized away
+
+    private GcodeFormatBenchmark(List<double[]> moves) {
+        this.moves = moves;
+    }
+
+    /**
+     * Cuts a 150 x 100 mm ellipse drawn as a polyline in the configured number
+     * of passes, like the profile of a drawn outline.
+     */
+    static List<double[]> referenceJob() {
+        List<double[]> moves = new ArrayList<>();
+        double topZ = Configuration.MATERIAL_BASE_Z + Configuration.MATERIAL_SIZE_Z;
+        double bottomZ = Configuration.MATERIAL_BASE_Z;
+        int passes = Configuration.NUMBER_OF_PASSES;
+        moves.add(new double[] { RAPID, 175, 100, topZ + 5, Double.NaN, 0, 0 });
+        for (int pass = 1; pass <= passes; pass++) {
+            double z = (bottomZ * pass + topZ * (passes - pass)) / passes;
+            moves.add(new double[] { LINEAR, 175, 100, z, Configuration.PLUNGE_FEED, 0, 0 });
+            for (int i = 1; i <= SEGMENTS_PER_LAP; i++) {
+                double a = 2 * Math.PI * i / SEGMENTS_PER_LAP;
+                moves.add(new double[] { LINEAR, 100 + 75 * Math.cos(a), 
+                        100 + 50 * Math.sin(a), z, 
+                        i == 1 ? Configuration.FEED : Double.NaN, 0, 0 });
+            }
+        }
+        moves.add(new double[] { RAPID, 175, 100, topZ + 5, Double.NaN, 0, 0 });
+        return moves;
+    }
+
+    /**
+     * Moves of a program such as output.nc.
+     */
+    static List<double[]> load(List<String> lines) {
+        List<double[]> moves = new ArrayList<>();
+        double feed = Double.NaN;
+        for (PointSegment ps : GcodeEquivalence.replay(lines)) {
+            Point3d p = ps.point();
+            int mode = ps.isFastTraverse() ? RAPID : !ps.isArc() ? LINEAR 
+                    : ps.isClockwise() ? ARC_CW : ARC_CCW;
+            double f = Double.NaN;
+            if (mode == LINEAR && Double.compare(ps.getSpeed(), feed) != 0) {
+                f = feed = ps.getSpeed();
+            }
+            Point3d c = ps.isArc() ? ps.center() : p;
+            moves.add(new double[] { mode, p.x, p.y, p.z, f, c.x, c.y });
+        }
+        return moves;
+    }
+
+    /**
+     * @return number of lines generated
+     */
+    private long generate() {
+        GCodeGenerator gcg = new GCodeGenerator(line -> bytes += line.length() + 1);
+        for (double[] m : moves) {
+            switch ((int) m[0]) {
+                case RAPID:
+                    gcg.rapid(m[1], m[2], m[3]);
+                    break;
+                case LINEAR:
+                    gcg.linear(m[1], m[2], m[3], m[4]);
+                    break;
+                default:
+                    gcg.arc(m[1], m[2], m[3], m[5], m[6], m[0] == ARC_CW);
+            }
+        }
+        return gcg.getLineCount();
+    }
+
+    /**
+     * @return number of lines formatted
+     */
+    private long format() {
+        double x = Double.NaN, y = Double.NaN;
+        for (double[] m : moves) {
+            int mode = (int) m[0];
+            String line = mode == RAPID || mode == LINEAR
+                    ? CODES[mode] + buildWords("XYZF", m[1], m[2], m[3], m[4])
+                    : CODES[mode] + buildWords("XYZIJ", m[1], m[2], m[3], m[5] - x, m[6] - y);
+            bytes += line.length() + 1;
+            x = m[1];
+            y = m[2];
+        }
+        return moves.size();
+    }
+
+    /**
+     * Words as GCodeGenerator built them before it wrote into a GcodeLine.
+     */
+    private static String buildWords(String names, double... coords) {
+        StringBuilder sb = new StringBuilder(20);
+        for (int i = 0; i < coords.length && i < names.length(); i++) {
+            if (!Double.isNaN(coords[i])) {
+                sb.append(names.charAt(i)).append(String.format("%.3f", coords[i]));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return lines per second
+     */
+    private double measure(String name, LongSupplier run) {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            run.getAsLong();
+        }
+        long lines = 0;
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            lines += run.getAsLong();
+        }
+        long time = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        double throughput = lines * 1e9 / time;
+        System.out.printf("%-16s %,10.0f lines/s, %6.1f bytes allocated per line, %d lines per job\n",
+                name, throughput, (double) allocated / lines, lines / ROUNDS);
+        return throughput;
+    }
+
+    /**
+     * Benchmarks the program given as the only argument, or the built in
+     * reference job without arguments.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 1) {
+            System.err.println("Usage: GcodeFormatBenchmark [program.nc]");
+            System.exit(2);
+        }
+        GcodeFormatBenchmark benchmark = new GcodeFormatBenchmark(args.length == 0 
+                ? referenceJob()
+                : load(Files.readAllLines(Paths.get(args[0]), StandardCharsets.US_ASCII)));
+        double before = benchmark.measure("String.format", benchmark::format);
+        double after = benchmark.measure("GcodeLine", benchmark::generate);
+        System.out.printf("%.1fx the throughput (%d bytes)\n", after / before, benchmark.bytes);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.gcode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable ASCII buffer for a single G-code line. Coordinates are written as
+ * fixed-point micrometres so that no intermediate strings are created while
+ * a program is generated.
+ *
+ * @author akouznet
+ */
+public final class GcodeLine implements CharSequence {
+
+    public static final int DECIMALS = 3;
+    public static final long SCALE = 1000; // micrometres per mm
+
+    private byte[] buffer = new byte[64];
+    private int length;
+
+    public GcodeLine clear() {
+        length = 0;
+        return this;
+    }
+
+    /**
+     * Replaces the contents with a copy of the other line.
+     */
+    public GcodeLine set(GcodeLine other) {
+        ensureCapacity(other.length);
+        System.arraycopy(other.buffer, 0, buffer, 0, other.length);
+        length = other.length;
+        return this;
+    }
+
+    public GcodeLine append(char c) {
+        ensureCapacity(length + 1);
+        buffer[length++] = (byte) c;
+        return this;
+    }
+
+    public GcodeLine append(String s) {
+        int n = s.length();
+        ensureCapacity(length + n);
+        for (int i = 0; i < n; i++) {
+            buffer[length++] = (byte) s.charAt(i);
+        }
+        return this;
+    }
+
+    public GcodeLine append(long value) {
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        ensureCapacity(length + 19);
+        int start = length;
+        do {
+            buffer[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        reverse(start, length - 1);
+        return this;
+    }
+
+    /**
+     * Appends {@code letter} followed by {@code value} in mm rounded to
+     * micrometres, e.g. {@code X12.500}.
+     */
+    public GcodeLine appendWord(char letter, double value) {
+        return append(letter).appendFixed(toMicrons(value));
+    }
+
+    /**
+     * Appends a micrometre value as mm with exactly {@link #DECIMALS} digits.
+     */
+    public GcodeLine appendFixed(long micros) {
+        if (micros < 0) {
+            append('-');
+            micros = -micros;
+        }
+        append(micros / SCALE);
+        long fraction = micros % SCALE;
+        ensureCapacity(length + DECIMALS + 1);
+        buffer[length++] = '.';
+        for (long div = SCALE / 10; div > 0; div /= 10) {
+            buffer[length++] = (byte) ('0' + fraction / div % 10);
+        }
+        return this;
+    }
+
+    /**
+     * Same as {@link #appendFixed(long)} with trailing fraction zeros and
+     * a trailing decimal point removed, e.g. {@code 12.5} or {@code 3}.
+     */
+    public GcodeLine appendCompactFixed(long micros) {
+        appendFixed(micros);
+        for (int i = 0; i < DECIMALS && buffer[length - 1] == '0'; i++) {
+            length--;
+        }
+        if (buffer[length - 1] == '.') {
+            length--;
+        }
+        return this;
+    }
+
+    /**
+     * Number of characters {@link #appendFixed(long)} would write.
+     */
+    public static int fixedLength(long micros) {
+        int length = micros < 0 ? 1 : 0;
+        long integer = Math.abs(micros) / SCALE;
+        do {
+            length++;
+            integer /= 10;
+        } while (integer != 0);
+        return length + 1 + DECIMALS;
+    }
+
+    public static long toMicrons(double mm) {
+        return Math.round(mm * SCALE);
+    }
+
+    public byte[] array() {
+        return buffer;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+        }
+        return (char) buffer[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    private void reverse(int from, int to) {
+        while (from < to) {
+            byte b = buffer[from];
+            buffer[from++] = buffer[to];
+            buffer[to--] = b;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.gcode;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Destination for the lines produced by {@link GCodeGenerator}. The line
+ * passed to {@link #accept(GcodeLine)} is reused by the generator, so a sink
+ * has to copy whatever it wants to keep.
+ *
+ * @author akouznet
+ */
+public interface GcodeSink extends AutoCloseable {
+
+    void accept(GcodeLine line);
+
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Called instead of {@link #close()} when the program could not be
+     * generated completely.
+     */
+    default void abort() {
+        close();
+    }
+
+    static GcodeSink tee(GcodeSink... sinks) {
+        return tee(Arrays.asList(sinks));
+    }
+
+    static GcodeSink tee(List<GcodeSink> sinks) {
+        GcodeSink[] all = sinks.toArray(new GcodeSink[sinks.size()]);
+        return new GcodeSink() {
+            @Override
+            public void accept(GcodeLine line) {
+                for (GcodeSink sink : all) {
+                    sink.accept(line);
+                }
+            }
+
+            @Override
+            public void close() {
+                for (GcodeSink sink : all) {
+                    sink.close();
+                }
+            }
+
+            @Override
+            public void abort() {
+                for (GcodeSink sink : all) {
+                    sink.abort();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.gcode;
+
+import static drawandcut.Configuration.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+/**
+ * Surface heights probed on a regular grid over the sheet. Offsets between
+ * the grid points are interpolated bilinearly, outside of the grid the
+ * nearest edge is used.
+ *
+ * @author akouznet
+ */
+public class HeightMap {
+
+    private final double minX, minY, maxX, maxY;
+    private final int columns, rows;
+    private final double[] heights;
+
+    /**
+     * @param columns number of grid points along X, at least 2
+     * @param rows number of grid points along Y, at least 2
+     */
+    public HeightMap(double minX, double minY, double maxX, double maxY, int columns, int rows) {
+        if (columns < 2 || rows < 2) {
+            throw new IllegalArgumentException("Height map needs at least 2 x 2 points: " 
+                    + columns + " x " + rows);
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.columns = columns;
+        this.rows = rows;
+        this.heights = new double[columns * rows];
+        Arrays.fill(heights, Double.NaN);
+    }
+
+    /**
+     * Grid over the whole sheet.
+     */
+    public static HeightMap forSheet(int columns, int rows) {
+        return new HeightMap(MATERIAL_BASE_X, MATERIAL_BASE_Y, 
+                MATERIAL_BASE_X + MATERIAL_SIZE_X, MATERIAL_BASE_Y + MATERIAL_SIZE_Y, 
+                columns, rows);
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public double getX(int column) {
+        return minX + (maxX - minX) * column / (columns - 1);
+    }
+
+    public double getY(int row) {
+        return minY + (maxY - minY) * row / (rows - 1);
+    }
+
+    /**
+     * @param z probed height of the surface in work coordinates
+     */
+    public void set(int column, int row, double z) {
+        heights[row * columns + column] = z;
+    }
+
+    public double get(int column, int row) {
+        return heights[row * columns + column];
+    }
+
+    public boolean isComplete() {
+        for (double height : heights) {
+            if (Double.isNaN(height)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Difference between the surface at (x, y) and the nominal top of the
+     * material.
+     */
+    public double offset(double x, double y) {
+        double u = clamp((x - minX) / (maxX - minX) * (columns - 1), columns - 1);
+        double v = clamp((y - minY) / (maxY - minY) * (rows - 1), rows - 1);
+        int c = Math.min((int) u, columns - 2);
+        int r = Math.min((int) v, rows - 2);
+        double fu = u - c, fv = v - r;
+        double bottom = get(c, r) * (1 - fu) + get(c + 1, r) * fu;
+        double top = get(c, r + 1) * (1 - fu) + get(c + 1, r + 1) * fu;
+        return bottom * (1 - fv) + top * fv - (MATERIAL_BASE_Z + MATERIAL_SIZE_Z);
+    }
+
+    private static double clamp(double value, double max) {
+        return Math.max(0, Math.min(max, value));
+    }
+
+    /**
+     * Longest move which follows the interpolated surface closely enough,
+     * half of the smaller grid spacing.
+     */
+    public double getSegmentLength() {
+        return Math.min((maxX - minX) / (columns - 1), (maxY - minY) / (rows - 1)) / 2;
+    }
+
+    /**
+     * Probing order, rows are scanned back and forth.
+     */
+    public List<int[]> probingOrder() {
+        List<int[]> points = new ArrayList<>(columns * rows);
+        for (int r = 0; r < rows; r++) {
+            for (int i = 0; i < columns; i++) {
+                points.add(new int[] { r % 2 == 0 ? i : columns - 1 - i, r });
+            }
+        }
+        return points;
+    }
+
+    public void save(Path file) throws IOException {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "%d %d %.3f %.3f %.3f %.3f%n", 
+                columns, rows, minX, minY, maxX, maxY));
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                text.append(String.format(Locale.ROOT, c == 0 ? "%.3f" : " %.3f", get(c, r)));
+            }
+            text.append(System.lineSeparator());
+        }
+        Files.write(file, text.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @throws IllegalArgumentException when the file is not a complete map
+     */
+    public static HeightMap load(Path file) throws IOException {
+        try (Scanner scanner = new Scanner(file, "US-ASCII")) {
+            scanner.useLocale(Locale.ROOT);
+            int columns = scanner.nextInt();
+            int rows = scanner.nextInt();
+            HeightMap map = new HeightMap(scanner.nextDouble(), scanner.nextDouble(), 
+                    scanner.nextDouble(), scanner.nextDouble(), columns, rows);
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < columns; c++) {
+                    map.set(c, r, scanner.nextDouble());
+                }
+            }
+            if (!map.isComplete()) {
+                throw new IllegalArgumentException("Height map " + file + " has unprobed points");
+            }
+            return map;
+        } catch (NoSuchElementException ex) {
+            throw new IllegalArgumentException("Incomplete height map " + file, ex);
+        }
+    }
+}
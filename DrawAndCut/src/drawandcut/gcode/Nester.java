@@ -0,0 +1,296 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.gcode;
+
+import drawandcut.path.PathConversions;
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import javafx.geometry.Point2D;
+import javafx.scene.shape.Path;
+
+/**
+ * Packs part outlines onto a sheet one after another. Each part is tried
+ * in every allowed rotation at the lowest, then leftmost free position.
+ * The sheet is a grid of cells and a part occupies every cell its 
+ * footprint touches: the outline filled and widened by the kerf and the 
+ * spacing, so parts nest into each other's concave areas but never get
+ * closer than the spacing.
+ *
+ * @author akouznet
+ */
+public class Nester {
+
+    private final double originX;
+    private final double originY;
+    private final double resolution;
+    private final float footprintWidth;
+    private final double[] rotations;
+    private final int columns;
+    private final int rows;
+    private final boolean[][] occupied;
+    private final int[][] occupiedBefore;
+    private final double sheetArea;
+    private double partArea;
+    private int placed;
+
+    /**
+     * @param kerf width of the slot the tool cuts along an outline
+     * @param spacing material left between the slots of adjacent parts
+     * @param resolution size of a grid cell
+     * @param rotations allowed rotations in degrees
+     */
+    public Nester(Rectangle2D sheet, double kerf, double spacing, 
+            double resolution, double... rotations) {
+        if (rotations.length == 0) {
+            throw new IllegalArgumentException("No rotations allowed");
+        }
+        this.originX = sheet.getMinX() - spacing / 2;
+        this.originY = sheet.getMinY() - spacing / 2;
+        this.resolution = resolution;
+        this.footprintWidth = (float) (kerf + spacing);
+        this.rotations = rotations;
+        this.columns = (int) Math.floor((sheet.getWidth() + spacing) / resolution);
+        this.rows = (int) Math.floor((sheet.getHeight() + spacing) / resolution);
+        this.occupied = new boolean[rows][columns];
+        this.occupiedBefore = new int[rows][columns + 1];
+        this.sheetArea = sheet.getWidth() * sheet.getHeight();
+    }
+
+    /**
+     * Finds room for the outline and reserves it.
+     * 
+     * @return the transform moving the outline to its place on the sheet,
+     * null when there is no room left
+     */
+    public AffineTransform place(Path outline) {
+        Path2D shape = PathConversions.convertToPath2D(outline);
+        AffineTransform best = null;
+        int[][] bestCells = null;
+        int bestColumn = 0, bestRow = 0, bestTop = Integer.MAX_VALUE;
+        for (double rotation : rotations) {
+            AffineTransform rotate = AffineTransform.getRotateInstance(Math.toRadians(rotation));
+            Area footprint = footprint(rotate.createTransformedShape(shape));
+            Rectangle2D bounds = footprint.getBounds2D();
+            int[][] cells = rasterize(footprint, bounds);
+            for (int row = 0; row + cells.length <= rows 
+                    && row + cells.length < bestTop; row++) {
+                int column = findColumn(cells, row);
+                if (column >= 0) {
+                    best = AffineTransform.getTranslateInstance(
+                            originX + column * resolution - bounds.getMinX(),
+                            originY + row * resolution - bounds.getMinY());
+                    best.concatenate(rotate);
+                    bestCells = cells;
+                    bestColumn = column;
+                    bestRow = row;
+                    bestTop = row + cells.length;
+                    break;
+                }
+            }
+        }
+        if (best != null) {
+            occupy(bestCells, bestColumn, bestRow);
+            partArea += area(shape);
+            placed++;
+        }
+        return best;
+    }
+
+    public int getPlaced() {
+        return placed;
+    }
+
+    /**
+     * @return part of the sheet inside the outlines placed
+     */
+    public double getUtilization() {
+        return partArea / sheetArea;
+    }
+
+    public void summarize(JobSummary summary) {
+        summary.add("Nesting: %d parts placed, %.0f%% of the sheet used", 
+                placed, 100 * getUtilization());
+    }
+
+    public static Path transform(Path path, AffineTransform transform) {
+        return PathConversions.convertToPath(
+                PathConversions.convertToPath2D(path).getPathIterator(transform));
+    }
+
+    public static Point2D transform(Point2D point, AffineTransform transform) {
+        java.awt.geom.Point2D p = transform.transform(
+                new java.awt.geom.Point2D.Double(point.getX(), point.getY()), null);
+        return new Point2D(p.getX(), p.getY());
+    }
+
+    private Area footprint(Shape shape) {
+        Area footprint = new Area(shape);
+        footprint.add(new Area(new BasicStroke(footprintWidth, 
+                BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND)
+                .createStrokedShape(shape)));
+        return footprint;
+    }
+
+    /**
+     * @return columns of the cells the area touches as start, end pairs
+     * for each row of its bounds. Every connected piece of the area within
+     * a row touches all the cells its horizontal extent spans.
+     */
+    private int[][] rasterize(Area area, Rectangle2D bounds) {
+        int width = (int) Math.ceil(bounds.getWidth() / resolution);
+        int height = (int) Math.ceil(bounds.getHeight() / resolution);
+        int[][] cells = new int[height][];
+        boolean[] touched = new boolean[width];
+        double[] coords = new double[6];
+        for (int row = 0; row < height; row++) {
+            Area strip = new Area(new Rectangle2D.Double(bounds.getMinX(), 
+                    bounds.getMinY() + row * resolution, bounds.getWidth(), resolution));
+            strip.intersect(area);
+            Arrays.fill(touched, false);
+            double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+            for (PathIterator pi = strip.getPathIterator(null); !pi.isDone(); pi.next()) {
+                int type = pi.currentSegment(coords);
+                if (type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_CLOSE) {
+                    mark(touched, bounds.getMinX(), minX, maxX);
+                    minX = Double.POSITIVE_INFINITY;
+                    maxX = Double.NEGATIVE_INFINITY;
+                }
+                if (type != PathIterator.SEG_CLOSE) {
+                    int last = type == PathIterator.SEG_QUADTO ? 4 
+                            : type == PathIterator.SEG_CUBICTO ? 6 : 2;
+                    for (int i = 0; i < last; i += 2) {
+                        minX = Math.min(minX, coords[i]);
+                        maxX = Math.max(maxX, coords[i]);
+                    }
+                }
+            }
+            mark(touched, bounds.getMinX(), minX, maxX);
+            int[] runs = new int[width + 1];
+            int count = 0;
+            boolean inside = false;
+            for (int column = 0; column < width; column++) {
+                if (touched[column] != inside) {
+                    runs[count++] = column;
+                    inside = touched[column];
+                }
+            }
+            if (inside) {
+                runs[count++] = width;
+            }
+            cells[row] = Arrays.copyOf(runs, count);
+        }
+        return cells;
+    }
+
+    private void mark(boolean[] touched, double originX, double minX, double maxX) {
+        if (minX <= maxX) {
+            int from = Math.min(touched.length - 1, 
+                    Math.max(0, (int) Math.floor((minX - originX) / resolution)));
+            int to = Math.min(touched.length, (int) Math.ceil((maxX - originX) / resolution));
+            Arrays.fill(touched, from, Math.max(from + 1, to), true);
+        }
+    }
+
+    /**
+     * @return leftmost column the cells fit at in the row, -1 if none
+     */
+    private int findColumn(int[][] cells, int row) {
+        int width = 0;
+        for (int[] runs : cells) {
+            if (runs.length > 0) {
+                width = Math.max(width, runs[runs.length - 1]);
+            }
+        }
+        for (int column = 0; column + width <= columns; column++) {
+            if (fits(cells, column, row)) {
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    private boolean fits(int[][] cells, int column, int row) {
+        for (int r = 0; r < cells.length; r++) {
+            int[] before = occupiedBefore[row + r];
+            int[] runs = cells[r];
+            for (int i = 0; i < runs.length; i += 2) {
+                if (before[column + runs[i + 1]] != before[column + runs[i]]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void occupy(int[][] cells, int column, int row) {
+        for (int r = 0; r < cells.length; r++) {
+            boolean[] line = occupied[row + r];
+            int[] runs = cells[r];
+            for (int i = 0; i < runs.length; i += 2) {
+                for (int c = runs[i]; c < runs[i + 1]; c++) {
+                    line[column + c] = true;
+                }
+            }
+            int[] before = occupiedBefore[row + r];
+            for (int c = 0; c < columns; c++) {
+                before[c + 1] = before[c] + (line[c] ? 1 : 0);
+            }
+        }
+    }
+
+    /**
+     * Area enclosed by the shape, holes excluded.
+     */
+    private static double area(Shape shape) {
+        double area = 0;
+        double[] coords = new double[6];
+        double startX = 0, startY = 0, lastX = 0, lastY = 0;
+        for (PathIterator pi = new Area(shape).getPathIterator(null, 0.1); 
+                !pi.isDone(); pi.next()) {
+            switch (pi.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO:
+                    startX = lastX = coords[0];
+                    startY = lastY = coords[1];
+                    break;
+                case PathIterator.SEG_LINETO:
+                    area += lastX * coords[1] - coords[0] * lastY;
+                    lastX = coords[0];
+                    lastY = coords[1];
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    area += lastX * startY - startX * lastY;
+                    lastX = startX;
+                    lastY = startY;
+                    break;
+            }
+        }
+        return Math.abs(area) / 2;
+    }
+}
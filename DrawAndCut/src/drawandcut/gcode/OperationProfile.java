@@ -0,0 +1,175 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.gcode;
+
+import static drawandcut.Configuration.*;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cutting parameters of one {@link Operation}.
+ *
+ * @author akouznet
+ */
+public final class OperationProfile {
+
+    private final int rpm;
+    private final double feed;
+    private final double plungeFeed;
+    private final double doc;
+    private final int passes;
+
+    /**
+     * @param doc largest depth of one pass
+     * @param passes smallest number of passes, 0 to derive it from doc only
+     */
+    public OperationProfile(int rpm, double feed, double plungeFeed, double doc, int passes) {
+        if (feed <= 0 || plungeFeed <= 0 || doc <= 0 || passes < 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid profile: feed %f, plunge feed %f, DOC %f, passes %d", 
+                    feed, plungeFeed, doc, passes));
+        }
+        this.rpm = rpm;
+        this.feed = feed;
+        this.plungeFeed = plungeFeed;
+        this.doc = doc;
+        this.passes = passes;
+    }
+
+    public int getRpm() {
+        return rpm;
+    }
+
+    public double getFeed() {
+        return feed;
+    }
+
+    public double getPlungeFeed() {
+        return plungeFeed;
+    }
+
+    public double getDoc() {
+        return doc;
+    }
+
+    public int getPasses() {
+        return passes;
+    }
+
+    /**
+     * Number of passes to cut the given depth with.
+     */
+    public int passes(double depth) {
+        return Math.max(passes, (int) Math.ceil(depth / doc));
+    }
+
+    /**
+     * Profiles the configuration defaults to.
+     */
+    public static Map<Operation, OperationProfile> defaults() {
+        Map<Operation, OperationProfile> profiles = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            profiles.put(operation, operation == Operation.ENGRAVE
+                    ? new OperationProfile(RPM, FEED, PLUNGE_FEED, INITIALS_DOC, 1)
+                    : new OperationProfile(RPM, FEED, PLUNGE_FEED, DOC, NUMBER_OF_PASSES));
+        }
+        return Collections.unmodifiableMap(profiles);
+    }
+
+    /**
+     * The same parameters for every operation except engraving, which is
+     * cut in one pass.
+     */
+    public static Map<Operation, OperationProfile> uniform(int rpm, double feed, double doc, double plungeFeed) {
+        Map<Operation, OperationProfile> profiles = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            profiles.put(operation, operation == Operation.ENGRAVE
+                    ? new OperationProfile(rpm, feed, plungeFeed, INITIALS_DOC, 1)
+                    : new OperationProfile(rpm, feed, plungeFeed, doc, 0));
+        }
+        return Collections.unmodifiableMap(profiles);
+    }
+
+    /**
+     * Reads profiles from a properties file with keys like 
+     * {@code engrave.feed}, {@code hole.plungeFeed}, {@code profile.rpm}, 
+     * {@code profile.doc} or {@code facing.passes}. Whatever the file does
+     * not set comes from {@link #defaults()}.
+     */
+    public static Map<Operation, OperationProfile> load(File file) {
+        Properties props = new Properties();
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                props.load(in);
+            } catch (IOException ex) {
+                Logger.getLogger(OperationProfile.class.getName())
+                        .log(Level.SEVERE, "Failed to read " + file, ex);
+            }
+        }
+        Map<Operation, OperationProfile> profiles = new EnumMap<>(Operation.class);
+        defaults().forEach((operation, defaults) -> {
+            String prefix = operation.key() + ".";
+            OperationProfile profile = new OperationProfile(
+                    Integer.parseInt(props.getProperty(prefix + "rpm", Integer.toString(defaults.rpm))),
+                    Double.parseDouble(props.getProperty(prefix + "feed", Double.toString(defaults.feed))),
+                    Double.parseDouble(props.getProperty(prefix + "plungeFeed", Double.toString(defaults.plungeFeed))),
+                    Double.parseDouble(props.getProperty(prefix + "doc", Double.toString(defaults.doc))),
+                    Integer.parseInt(props.getProperty(prefix + "passes", Integer.toString(defaults.passes))));
+            System.out.printf("Profile %s: %s\n", operation.key(), profile);
+            profiles.put(operation, profile);
+        });
+        return Collections.unmodifiableMap(profiles);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof OperationProfile)) {
+            return false;
+        }
+        OperationProfile other = (OperationProfile) obj;
+        return rpm == other.rpm && feed == other.feed 
+                && plungeFeed == other.plungeFeed && doc == other.doc 
+                && passes == other.passes;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(rpm, feed, plungeFeed, doc, passes);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RPM %d, feed %.0f mmpm, plunge feed %.0f mmpm, DOC %.3f mm, %d passes", 
+                rpm, feed, plungeFeed, doc, passes);
+    }
+}
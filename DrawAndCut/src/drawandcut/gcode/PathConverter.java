@@ -25,16 +25,25 @@ package drawandcut.gcode;
 
 import drawandcut.Configuration;
 import static drawandcut.Configuration.*;
+import drawandcut.path.ArcFitter;
+import drawandcut.path.Contour;
+import drawandcut.path.FittedContour;
 import drawandcut.path.PathConversions;
+import drawandcut.path.PolylineSimplifier;
+import drawandcut.path.ToolpathOrderer;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javafx.geometry.Point2D;
-import javafx.scene.shape.ClosePath;
-import javafx.scene.shape.LineTo;
-import javafx.scene.shape.MoveTo;
 import javafx.scene.shape.Path;
-import javafx.scene.shape.PathElement;
 
 /**
  *
@@ -42,63 +51,277 @@ import javafx.scene.shape.PathElement;
  */
 public class PathConverter {
     
-    private final GCodeGenerator gcg = new GCodeGenerator();
+    private final GCodeGenerator gcg;
+    private final JobSummary summary = new JobSummary();
     private Path path;
     private Path initials;
-    private final Point2D hole;
-    private final double feed;
-    private final double plungeFeed;
-    private final double doc;
-    private double startX;
-    private double startY;
+    private final List<Point2D> holes;
+    private final Map<Operation, OperationProfile> profiles;
+    private final Map<Operation, Double> times = new EnumMap<>(Operation.class);
+    private double feed;
+    private double plungeFeed;
+    private double doc;
+    private final DepthStrategy strategy;
+    private final boolean fitArcs;
+    private final boolean helicalHole;
+    private final PolylineSimplifier simplifier = new PolylineSimplifier(CHORD_TOLERANCE);
+    private final FeedScheduler scheduler = ENABLE_FEED_SCHEDULING 
+            ? new FeedScheduler(TOOL_DIAMETER, MIN_FEED_FACTOR, FEED_BOOST) : null;
+    private double requestedFeed = GCodeGenerator.EMPTY;
+    private final Map<Contour, FeedScheduler.Schedule> schedules = new IdentityHashMap<>();
+    private final RetractPlanner retracts;
+    private double scheduledTime, constantFeedTime;
+    private int arcs, replacedLines;
+    private double arcTime, replacedTime;
+    private double toolX = MATERIAL_BASE_X, toolY = MATERIAL_BASE_Y;
+    private double travel, unorderedTravel;
+    private double fitTime;
+    private int verticesBefore, verticesAfter;
 
     public PathConverter(Path path, Point2D hole, Path initials, int rpm, double feed, double doc, double plungeFeed) {
-        this.feed = feed;
+        this(path, hole, initials, rpm, feed, doc, plungeFeed, new ListGcodeSink());
+    }
+
+    public PathConverter(Path path, Point2D hole, Path initials, int rpm, double feed, double doc, double plungeFeed, GcodeSink sink) {
+        this(path, hole, initials, rpm, feed, doc, plungeFeed, DEPTH_STRATEGY, sink);
+    }
+
+    public PathConverter(Path path, Point2D hole, Path initials, int rpm, double feed, double doc, double plungeFeed, DepthStrategy strategy, GcodeSink sink) {
+        this(path, hole, initials, rpm, feed, doc, plungeFeed, strategy, null, sink);
+    }
+
+    /**
+     * @param heightMap surface to follow, null for a flat sheet. Arcs are
+     * not fitted when it is set.
+     */
+    public PathConverter(Path path, Point2D hole, Path initials, int rpm, double feed, double doc, double plungeFeed, DepthStrategy strategy, HeightMap heightMap, GcodeSink sink) {
+        this(path, hole, initials, OperationProfile.uniform(rpm, feed, doc, plungeFeed), 
+                strategy, heightMap, sink);
+    }
+
+    /**
+     * @param profiles cutting parameters of each operation. A hole cut 
+     * with the same profile as the outline is cut together with it.
+     */
+    public PathConverter(Path path, Point2D hole, Path initials, Map<Operation, OperationProfile> profiles, DepthStrategy strategy, HeightMap heightMap, GcodeSink sink) {
+        this(path, hole == null ? Collections.emptyList() : Collections.singletonList(hole),
+                initials, profiles, strategy, heightMap, sink);
+    }
+
+    /**
+     * @param holes centers of the holes, several when parts are nested on
+     * the sheet.
+     */
+    public PathConverter(Path path, List<Point2D> holes, Path initials, Map<Operation, OperationProfile> profiles, DepthStrategy strategy, HeightMap heightMap, GcodeSink sink) {
+        this.gcg = new GCodeGenerator(sink, COMPACT_GCODE);
+        this.strategy = strategy;
+        this.fitArcs = !DISABLE_ARCS && heightMap == null;
+        this.retracts = DISABLE_SHORT_RETRACTS ? null : new RetractPlanner(
+                gcg.getTopZ() + RETRACT_CLEARANCE, gcg.getSafeZ(), SHORT_HOP);
+        this.profiles = profiles;
         this.path = path;
-        this.hole = hole;
-        this.plungeFeed = plungeFeed;
-        this.doc = doc;
+        this.holes = holes;
         this.initials = initials;
-        gcg.init(rpm);
-        processHole();
-        processInitials();
-        processPath();
+        boolean plungeHole = !holes.isEmpty() && HOLE_DIAMETER <= TOOL_DIAMETER;
+        this.helicalHole = !holes.isEmpty() && !plungeHole && fitArcs && !DISABLE_HELICAL_HOLE;
+        boolean separateHole = !holes.isEmpty() && !plungeHole 
+                && !profiles.get(Operation.HOLE).equals(profiles.get(Operation.PROFILE));
+        gcg.init(profiles.get(plungeHole || helicalHole || separateHole ? Operation.HOLE 
+                : initials != null ? Operation.ENGRAVE : Operation.PROFILE).getRpm());
+        gcg.setHeightMap(heightMap);
+        Path holePath = processHole();
+        if (holePath != null && !separateHole) {
+            this.path = new Path(this.path.getElements());
+            this.path.getElements().addAll(0, holePath.getElements());
+            holePath = null;
+        }
+        double[] holeDepths = passDepths(profiles.get(Operation.HOLE));
+        double[] depths = passDepths(profiles.get(Operation.PROFILE));
+        List<Contour> contours = new ArrayList<>();
+        if (holePath != null) {
+            contours.addAll(order(PathConversions.convertToContours(holePath), 
+                    strategy == DepthStrategy.LAYER ? holeDepths.length : 1));
+        }
+        int holeCount = contours.size();
+        if (this.initials != null) {
+            contours.addAll(order(PathConversions.convertToContours(this.initials), 
+                    profiles.get(Operation.ENGRAVE).passes(INITIALS_DOC)));
+        }
+        int initialsCount = contours.size();
+        contours.addAll(order(PathConversions.convertToContours(this.path), 
+                strategy == DepthStrategy.LAYER ? depths.length : 1));
+        List<FittedContour> fitted = fit(contours);
+        List<Contour> holeContours = schedule(fitted.subList(0, holeCount), 
+                Collections.emptyList());
+        schedule(fitted.subList(holeCount, initialsCount), Collections.emptyList());
+        schedule(fitted.subList(initialsCount, fitted.size()), holeContours);
+        if (holeCount > 0) {
+            operation(Operation.HOLE, () -> processPath(fitted.subList(0, holeCount), holeDepths));
+        }
+        if (initialsCount > holeCount) {
+            operation(Operation.ENGRAVE, () -> processInitials(fitted.subList(holeCount, initialsCount)));
+        }
+        operation(Operation.PROFILE, () -> processPath(fitted.subList(initialsCount, fitted.size()), depths));
         gcg.spindleStop();
         gcg.goHome();
         gcg.programEnd();
+        gcg.summarize(summary);
+        summary.add("Decimation: %d vertices (%d before)",
+                verticesAfter, verticesBefore);
+        summary.add("Travel between contours: %.0f mm (%.0f mm in drawing order)",
+                travel, unorderedTravel);
+        summary.add("Toolpath fitting: %d contours in %.0f ms, %s",
+                contours.size(), fitTime, SEQUENTIAL_GCODE ? "sequential" 
+                        : ForkJoinPool.getCommonPoolParallelism() + " threads");
+        if (fitArcs) {
+            summary.add("Arc fitting: %d arcs replaced %d lines, %d lines and %.1f min without arcs",
+                    arcs, replacedLines, gcg.getLineCount() + replacedLines - arcs,
+                    gcg.getEstimatedTime() + replacedTime - arcTime);
+        }
+        if (retracts != null) {
+            retracts.summarize(summary);
+        }
+        if (scheduler != null) {
+            summary.add("Feed scheduling: %.1f min of contour cutting, %.1f min at constant feed",
+                    scheduledTime, constantFeedTime);
+        }
+        times.forEach((operation, time) -> summary.add("Operation %s: %.1f min, %s", 
+                operation.key(), time, profiles.get(operation)));
+    }
+
+    /**
+     * Switches to the profile of the operation and accounts the time the
+     * cut takes to it.
+     */
+    private void operation(Operation operation, Runnable cut) {
+        OperationProfile profile = profiles.get(operation);
+        if (profile.getRpm() != gcg.getRpm()) {
+            if (gcg.getZ() < gcg.getSafeZ()) {
+                gcg.rapidZ(gcg.getSafeZ());
+            }
+            gcg.spindleClockwise(profile.getRpm());
+        }
+        feed = profile.getFeed();
+        plungeFeed = profile.getPlungeFeed();
+        doc = profile.getDoc();
+        double start = gcg.getEstimatedTime();
+        cut.run();
+        times.merge(operation, gcg.getEstimatedTime() - start, Double::sum);
     }
 
-    private void processHole() {
-        if (hole != null) {
+    /**
+     * Plunges holes no wider than the tool or cuts them with a helix, 
+     * otherwise returns the path the tool has to follow to cut the holes.
+     */
+    private Path processHole() {
+        Path holePath = null;
+        for (Point2D hole : holes) {
             double x = hole.getX();
             double y = hole.getY();
             if (HOLE_DIAMETER <= TOOL_DIAMETER) {
-                gcg.rapid(x, y, gcg.getSafeZ());
-                gcg.linearZF(gcg.getBottomZ(), plungeFeed);
-                gcg.rapid(x, y, gcg.getSafeZ());
+                operation(Operation.HOLE, () -> {
+                    gcg.rapid(x, y, gcg.getSafeZ());
+                    gcg.linearZF(gcg.getBottomZ(), plungeFeed);
+                    gcg.rapid(x, y, gcg.getSafeZ());
+                });
+            } else if (helicalHole) {
+                operation(Operation.HOLE, () -> processHelix(x, y, 
+                        (HOLE_DIAMETER - TOOL_DIAMETER) / 2.));
             } else {
                 double dr = (HOLE_DIAMETER - TOOL_DIAMETER) / 2.;
                 Path2D holePath1 = new Path2D.Double(new Ellipse2D.Double(x - dr, y - dr, dr + dr, dr + dr));
 //                System.out.println("holePath1 = " + holePath1);                
-                Path holePath = PathConversions.convertToPath(
+                Path circle = PathConversions.convertToPath(
                         holePath1.getPathIterator(null, Configuration.FLATNESS));
 //                System.out.println("holePath = " + holePath);
-                path = new Path(path.getElements());
-                path.getElements().addAll(0, holePath.getElements());
+                if (holePath == null) {
+                    holePath = circle;
+                } else {
+                    holePath.getElements().addAll(circle.getElements());
+                }
+            }
+        }
+        return holePath;
+    }
+    
+    /**
+     * Descends from the top of the material to the bottom along a helix 
+     * of half circle arcs, no more than one depth of cut per turn, then
+     * cuts a flat circle at the bottom. Clockwise, so the tool is not 
+     * pulled into the wall.
+     */
+    private void processHelix(double x, double y, double radius) {
+        double startX = convertX(x + radius);
+        double startY = convertY(y);
+        double oppositeX = convertX(x - radius);
+        double centerX = convertX(x);
+        double centerY = convertY(y);
+        int turns = profiles.get(Operation.HOLE).passes(MATERIAL_SIZE_Z);
+        double top = gcg.getTopZ();
+        double bottom = gcg.getBottomZ();
+        gcg.rapid(startX, startY, gcg.getSafeZ());
+        gcg.rapidZ(top + 1);
+        gcg.linearZF(top, plungeFeed);
+        gcg.setFeed(feed);
+        for (int half = 1; half <= 2 * turns + 2; half++) {
+            double z = half >= 2 * turns ? bottom 
+                    : top + (bottom - top) * half / (2 * turns);
+            gcg.arc(half % 2 == 1 ? oppositeX : startX, startY, z, 
+                    centerX, centerY, true);
+        }
+        gcg.rapidZ(gcg.getSafeZ());
+        if (retracts != null) {
+            Contour circle = new Contour(startX, startY);
+            for (int i = 1; i < 36; i++) {
+                circle.add(centerX + radius * Math.cos(i * Math.PI / 18), 
+                        centerY + radius * Math.sin(i * Math.PI / 18));
             }
+            circle.close();
+            retracts.release(circle);
+        }
+    }
+
+    private void processInitials(List<FittedContour> contours) {
+        int passes = profiles.get(Operation.ENGRAVE).passes(INITIALS_DOC);
+        for (int i = 1; i <= passes; i++) {
+            double initialsZ = gcg.getTopZ() - INITIALS_DOC * i / passes;
+            processContours(contours, initialsZ);
         }
     }
     
-    private void processInitials() {
-        if (initials != null) {
-            double initialsZ = gcg.getTopZ() - INITIALS_DOC;
-            processPathInXY(initials, initialsZ);
+    private void processPath(List<FittedContour> contours, double[] depths) {
+        switch (strategy) {
+            case LAYER:
+                for (double z : depths) {
+                    processContours(contours, z);
+                }
+                break;
+            case CONTOUR:
+            case RAMP:
+                for (FittedContour fitted : contours) {
+                    Contour contour = fitted.getContour();
+                    if (strategy == DepthStrategy.RAMP && contour.isClosed() 
+                            && contour.length() > 0) {
+                        processRamp(fitted, depths);
+                        continue;
+                    }
+                    for (int i = 0; i < depths.length; i++) {
+                        // A closed contour ends where it starts, go straight down
+                        processContour(fitted, depths[i], i > 0 && contour.isClosed());
+                    }
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unexpected depth strategy: " + strategy);
         }
+        gcg.rapidZ(gcg.getSafeZ());        
     }
     
-    private void processPath() {
-        int zSteps = (int) Math.ceil(MATERIAL_SIZE_Z / doc);
+    private double[] passDepths(OperationProfile profile) {
+        double doc = profile.getDoc();
+        int zSteps = profile.passes(MATERIAL_SIZE_Z);
 //        System.out.println("zSteps = " + zSteps);
+        double[] depths = new double[zSteps];
         double oldZ = gcg.getTopZ();
 //        System.out.println("oldZ = " + oldZ);
         for (int i = 1; i <= zSteps; i++) {
@@ -109,50 +332,319 @@ public class PathConverter {
             assert Math.abs(newZ - oldZ) < doc + Z_ACCURACY;
             assert newZ <= gcg.getTopZ() + Z_ACCURACY;
             assert newZ >= gcg.getBottomZ() - Z_ACCURACY;
-            processPathInXY(path, newZ);
+            depths[i - 1] = newZ;
             oldZ = newZ;
         }
-        gcg.rapidZ(gcg.getSafeZ());        
+        return depths;
     }
     
-    private void processPathInXY(Path path, double targetZ) {
-//        Bounds boundsInLocal = path.getBoundsInLocal();
-//        System.out.println("path.getBoundsInLocal() = " + boundsInLocal);
-        startX = Double.NaN;
-        startY = Double.NaN;
-        for (PathElement pe : path.getElements()) {
-            if (pe instanceof MoveTo) {
-                MoveTo mt = MoveTo.class.cast(pe);
-                startX = mt.getX();
-                startY = mt.getY();
-                double x = convertX(startX);
-                double y = convertY(startY);
-                if (gcg.getZ() < gcg.getSafeZ() || x != gcg.getX() || y != gcg.getY()) {
-                    if (!Double.isNaN(gcg.getZ()) || gcg.getZ() < gcg.getSafeZ()) {
-                        gcg.rapidZ(gcg.getSafeZ());
-                    }
-                    gcg.rapid(x, y, gcg.getSafeZ());
-                    gcg.rapidZ(gcg.getTopZ() + 1);
-                }
-                gcg.linearZF(targetZ, plungeFeed);
-                gcg.setFeed(feed);
-            } else if (pe instanceof LineTo) {
-                assertStarted();
-                LineTo lt = LineTo.class.cast(pe);
-                gcg.linear(convertX(lt.getX()), convertY(lt.getY()));
-            } else if (pe instanceof ClosePath) {
-                assertStarted();
-                gcg.linear(convertX(startX), convertY(startY));
-            } else {
-                throw new IllegalArgumentException("Unsupported path element: "
-                        + pe);
+    /**
+     * Orders contours cut the given number of times starting from where the 
+     * tool was left by the previous contours.
+     */
+    private List<Contour> order(List<Contour> contours, int passes) {
+        unorderedTravel += passes * ToolpathOrderer.travel(contours, toolX, toolY);
+        if (!DISABLE_ORDERING) {
+            contours = new ToolpathOrderer(contours, toolX, toolY).order();
+        }
+        travel += passes * ToolpathOrderer.travel(contours, toolX, toolY);
+        if (!contours.isEmpty()) {
+            Contour last = contours.get(contours.size() - 1);
+            toolX = last.getX(last.size() - 1);
+            toolY = last.getY(last.size() - 1);
+        }
+        return contours;
+    }
+
+    /**
+     * Fits moves to every contour, concurrently unless sequential generation
+     * is configured. Fitting only depends on the geometry, so the results
+     * come back in contour order and the program is the same either way.
+     * Contours are decimated here and nowhere else, so the cut stays within
+     * FLATNESS + max(CHORD_TOLERANCE, ARC_TOLERANCE) of the drawn outline.
+     */
+    private List<FittedContour> fit(List<Contour> contours) {
+        long start = System.nanoTime();
+        Stream<Contour> stream = SEQUENTIAL_GCODE 
+                ? contours.stream() : contours.parallelStream();
+        List<FittedContour> result = stream
+                .map(contour -> FittedContour.fit(contour, 
+                        fitArcs ? new ArcFitter(ARC_TOLERANCE) : null, simplifier))
+                .collect(Collectors.toList());
+        fitTime = (System.nanoTime() - start) / 1e6;
+        for (int i = 0; i < contours.size(); i++) {
+            verticesBefore += contours.get(i).size();
+            verticesAfter += result.get(i).getMoveCount() + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Schedules the feed along contours cut in the given order at every 
+     * depth, after the given contours have been cut through.
+     * @return all the contours cut
+     */
+    private List<Contour> schedule(List<FittedContour> contours, List<Contour> cutBefore) {
+        List<Contour> cut = new ArrayList<>(cutBefore);
+        for (FittedContour fitted : contours) {
+            if (scheduler != null) {
+                schedules.put(fitted.getContour(), 
+                        scheduler.schedule(fitted.getContour(), cut));
+            }
+            cut.add(fitted.getContour());
+        }
+        return cut;
+    }
+
+    private void processContours(List<FittedContour> contours, double targetZ) {
+        for (FittedContour contour : contours) {
+            processContour(contour, targetZ, false);
+        }
+    }
+
+    /**
+     * Enters the material at the top and spirals down one lap per depth,
+     * then cuts a flat lap at the last depth.
+     */
+    private void processRamp(FittedContour contour, double[] depths) {
+        validateRamp(gcg.getTopZ(), depths);
+        processContour(contour, gcg.getTopZ(), false, true);
+        double z = gcg.getTopZ();
+        for (double depth : depths) {
+            double lapStartZ = gcg.getZ();
+            if (Math.abs(lapStartZ - z) > Z_ACCURACY) {
+                throw new IllegalStateException("Ramp lap starts at " + lapStartZ 
+                        + " instead of " + z);
             }
-        }        
+            moves.ramp(contour.getContour(), z, depth);
+            contour.replay(moves);
+            validateLap(lapStartZ, depth);
+            z = depth;
+        }
+        moves.flat();
+        contour.replay(moves);
+        release(contour, z);
+    }
+
+    private void processContour(FittedContour contour, double targetZ, boolean continuing) {
+        processContour(contour, targetZ, continuing, false);
+    }
+
+    /**
+     * @param continuing the tool is already at the start of the contour
+     * @param enterOnly only get to targetZ at the start of the contour
+     */
+    private void processContour(FittedContour contour, double targetZ, boolean continuing, boolean enterOnly) {
+        double x = convertX(contour.getContour().getX(0));
+        double y = convertY(contour.getContour().getY(0));
+        if (!continuing && (gcg.getZ() < gcg.getSafeZ() || x != gcg.getX() || y != gcg.getY())) {
+            double travelZ = retracts == null || Double.isNaN(gcg.getZ()) ? gcg.getSafeZ()
+                    : retracts.travelZ(gcg.getX(), gcg.getY(), x, y);
+            if (!Double.isNaN(gcg.getZ()) || gcg.getZ() < travelZ) {
+                gcg.rapidZ(travelZ);
+            }
+            gcg.rapid(x, y, travelZ);
+            if (travelZ != gcg.getTopZ() + 1) {
+                gcg.rapidZ(gcg.getTopZ() + 1);
+            }
+        }
+        gcg.linearZF(targetZ, plungeFeed);
+        if (scheduler == null) {
+            gcg.setFeed(feed);
+        } else {
+            // Set by the first move
+            requestedFeed = GCodeGenerator.EMPTY;
+        }
+        if (!enterOnly) {
+            contour.replay(moves);
+            release(contour, targetZ);
+        }
+    }
+
+    /**
+     * Lets the retract planner know the inside of a closed contour cut at
+     * the bottom may have come loose.
+     */
+    private void release(FittedContour contour, double z) {
+        if (retracts != null && contour.getContour().isClosed() 
+                && z <= gcg.getBottomZ() + Z_ACCURACY) {
+            Contour released = new Contour(convertX(contour.getContour().getX(0)), 
+                    convertY(contour.getContour().getY(0)));
+            for (int i = 1; i < contour.getContour().size(); i++) {
+                released.add(convertX(contour.getContour().getX(i)), 
+                        convertY(contour.getContour().getY(i)));
+            }
+            retracts.release(released);
+        }
     }
     
-    private void assertStarted() {
-        if (Double.isNaN(startX) || Double.isNaN(startY)) {
-            throw new IllegalStateException("Path has not been started");
+    private final ContourMoves moves = new ContourMoves();
+
+    /**
+     * Emits fitted moves, at a constant Z or ramping between two Z values
+     * proportionally to the distance along the contour.
+     */
+    private class ContourMoves implements ArcFitter.Moves {
+
+        private double[] distances;
+        private double fromZ, toZ;
+
+        void flat() {
+            distances = null;
+        }
+
+        void ramp(Contour contour, double fromZ, double toZ) {
+            this.fromZ = fromZ;
+            this.toZ = toZ;
+            distances = new double[contour.size()];
+            for (int i = 1; i < contour.size(); i++) {
+                distances[i] = distances[i - 1] + Math.hypot(
+                        contour.getX(i) - contour.getX(i - 1), 
+                        contour.getY(i) - contour.getY(i - 1));
+            }
+        }
+
+        private double z(int i) {
+            if (distances == null) {
+                return GCodeGenerator.EMPTY;
+            }
+            return fromZ + (toZ - fromZ) * distances[i] / distances[distances.length - 1];
+        }
+
+        @Override
+        public void line(Contour contour, int to) {
+            if (scheduler == null) {
+                gcg.linear(convertX(contour.getX(to)), convertY(contour.getY(to)), z(to));
+                return;
+            }
+            double length = Math.hypot(contour.getX(to) - contour.getX(to - 1), 
+                    contour.getY(to) - contour.getY(to - 1));
+            double slowdown = scheduler.getSlowdownLength();
+            FeedScheduler.Schedule schedule = schedules.get(contour);
+            double startFactor = schedule.atPoint(to - 1);
+            double endFactor = schedule.atPoint(to);
+            if (length <= 2 * slowdown) {
+                lineTo(contour, to, 1, Math.min(startFactor, endFactor));
+                return;
+            }
+            // Only the ends of a long line are cut at the feed of the turns
+            double full = schedule.alongSegment(to - 1);
+            if (startFactor < full) {
+                lineTo(contour, to, slowdown / length, startFactor);
+            }
+            if (endFactor < full) {
+                lineTo(contour, to, 1 - slowdown / length, full);
+            }
+            lineTo(contour, to, 1, endFactor);
+        }
+
+        /**
+         * Cuts the given fraction of the segment ending at point to.
+         */
+        private void lineTo(Contour contour, int to, double t, double factor) {
+            double fromX = gcg.getX(), fromY = gcg.getY();
+            double x = convertX(contour.getX(to - 1) 
+                    + (contour.getX(to) - contour.getX(to - 1)) * t);
+            double y = convertY(contour.getY(to - 1) 
+                    + (contour.getY(to) - contour.getY(to - 1)) * t);
+            double z = z(to);
+            if (t < 1) {
+                z = z - (z - z(to - 1)) * (1 - t);
+            } else {
+                x = convertX(contour.getX(to));
+                y = convertY(contour.getY(to));
+            }
+            scheduleFeed(factor);
+            gcg.linear(x, y, z);
+            double length = Math.hypot(x - fromX, y - fromY);
+            scheduledTime += length / (feed * factor);
+            constantFeedTime += length / feed;
+        }
+
+        @Override
+        public void arc(Contour contour, int from, int to, 
+                double centerX, double centerY, boolean clockwise) {
+            if (scheduler != null) {
+                double factor = schedules.get(contour).onArc(from, to, Math.hypot(
+                        contour.getX(from) - centerX, contour.getY(from) - centerY));
+                scheduleFeed(factor);
+                double length = 0;
+                for (int i = from; i < to; i++) {
+                    length += Math.hypot(contour.getX(i + 1) - contour.getX(i), 
+                            contour.getY(i + 1) - contour.getY(i));
+                }
+                scheduledTime += length / (feed * factor);
+                constantFeedTime += length / feed;
+            }
+            double time = gcg.getEstimatedTime();
+            gcg.arc(convertX(contour.getX(to)), convertY(contour.getY(to)), z(to),
+                    convertX(centerX), convertY(centerY), clockwise);
+            arcTime += gcg.getEstimatedTime() - time;
+            arcs++;
+            replacedLines += to - from;
+            for (int i = from; i < to; i++) {
+                replacedTime += gcg.estimateLinear(
+                        convertX(contour.getX(i)), convertY(contour.getY(i)), 
+                        convertX(contour.getX(i + 1)), convertY(contour.getY(i + 1)));
+            }
+        }
+    }
+
+    /**
+     * Changes the feed only when the scheduled one differs from the last
+     * requested one.
+     */
+    private void scheduleFeed(double factor) {
+        double f = feed * factor;
+        if (f != requestedFeed) {
+            gcg.setFeed(f);
+            requestedFeed = f;
+        }
+    }
+
+    /**
+     * Checks the planned laps of a ramp before any of it is emitted. The 
+     * ramp is linear along the contour, so every point of a lap is as far
+     * below the previous lap as its end is below its start.
+     * @throws IllegalStateException when a lap would climb, drop more than
+     * the depth of cut of the profile or leave the material
+     */
+    private void validateRamp(double startZ, double[] depths) {
+        double z = startZ;
+        for (double depth : depths) {
+            if (depth > z + Z_ACCURACY) {
+                throw new IllegalStateException("Ramp climbs in one lap: " 
+                        + z + " to " + depth);
+            }
+            if (depth < z - doc - Z_ACCURACY) {
+                throw new IllegalStateException("Ramp drops more than " + doc 
+                        + " mm in one lap: " + z + " to " + depth);
+            }
+            if (depth < gcg.getBottomZ() - Z_ACCURACY || depth > gcg.getTopZ() + Z_ACCURACY) {
+                throw new IllegalStateException("Ramp leaves the material: " + depth);
+            }
+            z = depth;
+        }
+    }
+
+    /**
+     * Checks the Z the generator has emitted by the end of a ramp lap, after
+     * validateRamp() has accepted the plan.
+     * @throws IllegalStateException when the lap dropped more than the depth
+     * of cut of the profile, did not end at its depth or left the material
+     */
+    private void validateLap(double lapStartZ, double depth) {
+        double z = gcg.getZ();
+        if (z < lapStartZ - doc - Z_ACCURACY) {
+            throw new IllegalStateException("Ramp drops more than " + doc 
+                    + " mm in one lap: " + lapStartZ + " to " + z);
+        }
+        if (Math.abs(z - depth) > Z_ACCURACY) {
+            throw new IllegalStateException("Ramp lap ends at " + z 
+                    + " instead of " + depth);
+        }
+        if (z < gcg.getBottomZ() - Z_ACCURACY || z > gcg.getTopZ() + Z_ACCURACY) {
+            throw new IllegalStateException("Ramp leaves the material: " + z);
         }
     }
 
@@ -164,7 +656,22 @@ public class PathConverter {
         return y;
     }
 
+    /**
+     * @return estimated time of the whole program in minutes
+     */
+    public double getEstimatedTime() {
+        return gcg.getEstimatedTime();
+    }
+
     public List<String> getOutput() {
         return gcg.getOutput();
     }
+
+    public GCodeGenerator getGenerator() {
+        return gcg;
+    }
+
+    public JobSummary getSummary() {
+        return summary;
+    }
 }
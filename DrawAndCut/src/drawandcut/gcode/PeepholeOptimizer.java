@@ -0,0 +1,349 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.gcode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Removes moves that do not change what the tool does from a program on
+ * its way to another sink. Consecutive G0 or G1 moves at the same feed 
+ * that continue along exactly the same line are merged, zero-length moves
+ * and mode or feed changes that change nothing are dropped. Coordinates
+ * are compared in micrometres as they are written, so merging is exact.
+ * Everything else passes through unchanged and ends any pending merge.
+ * Relative coordinates turn the optimizer off for the rest of the program.
+ *
+ * @author akouznet
+ */
+public class PeepholeOptimizer implements GcodeSink {
+
+    private static final long UNKNOWN = Long.MIN_VALUE;
+    private static final int X = 0, Y = 1, Z = 2;
+    private static final char[] AXES = { 'X', 'Y', 'Z' };
+
+    private final GcodeSink target;
+    private final boolean compact;
+    private final List<String> input;
+    private final List<String> output;
+    private final GcodeLine out = new GcodeLine();
+
+    // Parsed words of the current line, values in micrometres
+    private final boolean[] has = new boolean[26];
+    private final long[] value = new long[26];
+    private final long[] gCodes = new long[8];
+    private int gCount;
+    private boolean other;
+
+    // State after the lines received so far
+    private final long[] position = { UNKNOWN, UNKNOWN, UNKNOWN };
+    private long mode = UNKNOWN;
+    private long feed = UNKNOWN;
+
+    // State after the lines sent so far
+    private final long[] sentPosition = { UNKNOWN, UNKNOWN, UNKNOWN };
+    private long sentMode = UNKNOWN;
+    private long sentFeed = UNKNOWN;
+
+    // Move not sent yet because the next one may continue it
+    private boolean pending;
+    private boolean mergeable;
+    private final long[] runStart = new long[3];
+    private final long[] runEnd = new long[3];
+    private final boolean[] runAxes = new boolean[3];
+    private long runMode;
+    private long runFeed;
+    private boolean runFeedWord;
+
+    private boolean relative;
+    private long linesIn, linesOut, bytesIn, bytesOut, merged, dropped;
+
+    /**
+     * @param compact write merged moves with modal words left out, as 
+     * {@link GCodeGenerator} does in compact mode
+     * @param verify keep both programs and check on close that they sweep
+     * the same geometry
+     */
+    public PeepholeOptimizer(GcodeSink target, boolean compact, boolean verify) {
+        this.target = target;
+        this.compact = compact;
+        this.input = verify ? new ArrayList<>() : null;
+        this.output = verify ? new ArrayList<>() : null;
+    }
+
+    @Override
+    public void accept(GcodeLine line) {
+        linesIn++;
+        bytesIn += line.length() + 1;
+        if (input != null) {
+            input.add(line.toString());
+        }
+        if (relative || !parse(line) || other || gCount > 1) {
+            passThrough(line);
+            return;
+        }
+        long newMode = has['G' - 'A'] ? value['G' - 'A'] : mode;
+        long newFeed = has['F' - 'A'] ? value['F' - 'A'] : feed;
+        if (newMode != 0 && newMode != GcodeLine.SCALE) {
+            // Arcs and anything else modal
+            passThrough(line);
+            return;
+        }
+        boolean moves = has['X' - 'A'] || has['Y' - 'A'] || has['Z' - 'A'];
+        long[] to = new long[3];
+        boolean known = true;
+        for (int k = X; k <= Z; k++) {
+            to[k] = has[AXES[k] - 'A'] ? value[AXES[k] - 'A'] : position[k];
+            known &= to[k] != UNKNOWN && position[k] != UNKNOWN;
+        }
+        if (!moves || known && Arrays.equals(to, position)) {
+            // Only modal state changes, sent along with the next move
+            dropped++;
+        } else if (pending && mergeable && known && newMode == runMode 
+                && newFeed == runFeed && continues(runStart, runEnd, to)) {
+            System.arraycopy(to, 0, runEnd, 0, 3);
+            markAxes();
+            runFeedWord |= has['F' - 'A'];
+            merged++;
+        } else {
+            flush();
+            pending = true;
+            mergeable = known;
+            System.arraycopy(position, 0, runStart, 0, 3);
+            System.arraycopy(to, 0, runEnd, 0, 3);
+            Arrays.fill(runAxes, false);
+            markAxes();
+            runMode = newMode;
+            runFeed = newFeed;
+            runFeedWord = has['F' - 'A'];
+        }
+        System.arraycopy(to, 0, position, 0, 3);
+        mode = newMode;
+        feed = newFeed;
+    }
+
+    private void markAxes() {
+        for (int k = X; k <= Z; k++) {
+            runAxes[k] |= has[AXES[k] - 'A'];
+        }
+    }
+
+    /**
+     * Whether going on from b to c continues the straight line from a to b
+     * in the same direction.
+     */
+    private static boolean continues(long[] a, long[] b, long[] c) {
+        long ux = b[X] - a[X], uy = b[Y] - a[Y], uz = b[Z] - a[Z];
+        long vx = c[X] - b[X], vy = c[Y] - b[Y], vz = c[Z] - b[Z];
+        return uy * vz == uz * vy && uz * vx == ux * vz && ux * vy == uy * vx
+                && ux * vx + uy * vy + uz * vz > 0;
+    }
+
+    /**
+     * Reads the words of a line, the last value of every letter and all
+     * G codes. Anything but G, X, Y, Z and F words marks the line as other.
+     *
+     * @return false when a value cannot be read exactly
+     */
+    private boolean parse(GcodeLine line) {
+        Arrays.fill(has, false);
+        gCount = 0;
+        other = false;
+        int i = 0, length = line.length();
+        while (i < length) {
+            char c = Character.toUpperCase(line.charAt(i++));
+            if (c == ' ') {
+                continue;
+            }
+            if (c < 'A' || c > 'Z') {
+                // Comments, controller commands
+                other = true;
+                return true;
+            }
+            if (c != 'G' && c != 'X' && c != 'Y' && c != 'Z' && c != 'F') {
+                other = true;
+            }
+            boolean negative = i < length && line.charAt(i) == '-';
+            if (negative || i < length && line.charAt(i) == '+') {
+                i++;
+            }
+            long integer = 0, fraction = 0, scale = GcodeLine.SCALE;
+            int digits = 0;
+            while (i < length && Character.isDigit(line.charAt(i))) {
+                integer = integer * 10 + line.charAt(i++) - '0';
+                digits++;
+            }
+            if (i < length && line.charAt(i) == '.') {
+                i++;
+                while (i < length && Character.isDigit(line.charAt(i))) {
+                    if (scale == 1) {
+                        // Finer than a micrometre
+                        return false;
+                    }
+                    scale /= 10;
+                    fraction += (line.charAt(i++) - '0') * scale;
+                    digits++;
+                }
+            }
+            if (digits == 0 || digits > 15) {
+                return false;
+            }
+            long micros = integer * GcodeLine.SCALE + fraction;
+            has[c - 'A'] = true;
+            value[c - 'A'] = negative ? -micros : micros;
+            if (c == 'G' && gCount < gCodes.length) {
+                gCodes[gCount++] = value[c - 'A'];
+            } else if (c == 'G') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasG(long code) {
+        for (int i = 0; i < gCount; i++) {
+            if (gCodes[i] == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void passThrough(GcodeLine line) {
+        flush();
+        if (feed != sentFeed && feed != UNKNOWN) {
+            // A dropped feed change may apply to this line
+            out.clear().append('F');
+            appendValue(feed);
+            send(out);
+            sentFeed = feed;
+        }
+        long g = GcodeLine.SCALE;
+        if (!relative && parse(line)) {
+            relative = hasG(91 * g);
+            if (relative || hasG(92 * g) || hasG(28 * g) || hasG(30 * g) || hasG(53 * g)
+                    || hasG(10 * g) || hasG(38 * g + 200) || hasG(38 * g + 300)) {
+                // Position set or found by the controller
+                Arrays.fill(position, UNKNOWN);
+            } else {
+                for (int k = X; k <= Z; k++) {
+                    if (has[AXES[k] - 'A']) {
+                        position[k] = value[AXES[k] - 'A'];
+                    }
+                }
+            }
+            for (int i = 0; i < gCount; i++) {
+                if (gCodes[i] <= 3 * g && gCodes[i] % g == 0) {
+                    mode = gCodes[i];
+                }
+            }
+            if (has['F' - 'A']) {
+                feed = value['F' - 'A'];
+            }
+        } else {
+            mode = UNKNOWN;
+            feed = UNKNOWN;
+            Arrays.fill(position, UNKNOWN);
+        }
+        System.arraycopy(position, 0, sentPosition, 0, 3);
+        sentMode = mode;
+        sentFeed = feed;
+        send(line);
+    }
+
+    private void flush() {
+        if (!pending) {
+            return;
+        }
+        pending = false;
+        out.clear();
+        if (!compact || runMode != sentMode) {
+            out.append('G').append(runMode / GcodeLine.SCALE);
+        }
+        for (int k = X; k <= Z; k++) {
+            if (runEnd[k] != sentPosition[k] || !compact && runAxes[k]) {
+                out.append(AXES[k]);
+                appendValue(runEnd[k]);
+            }
+        }
+        if (runFeed != UNKNOWN && (runFeed != sentFeed || !compact && runFeedWord)) {
+            out.append('F');
+            appendValue(runFeed);
+        }
+        System.arraycopy(runEnd, 0, sentPosition, 0, 3);
+        sentMode = runMode;
+        sentFeed = runFeed;
+        send(out);
+    }
+
+    private void appendValue(long micros) {
+        if (compact) {
+            out.appendCompactFixed(micros);
+        } else {
+            out.appendFixed(micros);
+        }
+    }
+
+    private void send(GcodeLine line) {
+        linesOut++;
+        bytesOut += line.length() + 1;
+        if (output != null) {
+            output.add(line.toString());
+        }
+        target.accept(line);
+    }
+
+    @Override
+    public void close() {
+        flush();
+        verify();
+        target.close();
+    }
+
+    @Override
+    public void abort() {
+        flush();
+        target.abort();
+    }
+
+    private void verify() {
+        if (input == null) {
+            return;
+        }
+        try {
+            GcodeEquivalence.checkSwept(input, output);
+        } catch (IllegalStateException ex) {
+            Logger.getLogger(PeepholeOptimizer.class.getName())
+                    .log(Level.SEVERE, "Optimized program differs from the generated one", ex);
+        }
+    }
+
+    public void summarize(JobSummary summary) {
+        summary.add("Peephole optimizer: %d of %d lines removed, %d merged and %d dropped, %d bytes saved",
+                linesIn - linesOut, linesIn, merged, dropped, bytesIn - bytesOut);
+    }
+}
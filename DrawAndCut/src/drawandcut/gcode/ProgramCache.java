@@ -0,0 +1,326 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.gcode;
+
+import static drawandcut.Configuration.*;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.geometry.Point2D;
+import javafx.scene.shape.ClosePath;
+import javafx.scene.shape.CubicCurveTo;
+import javafx.scene.shape.LineTo;
+import javafx.scene.shape.MoveTo;
+import javafx.scene.shape.Path;
+import javafx.scene.shape.PathElement;
+
+/**
+ * Finished programs keyed by a SHA-256 of the geometry, the machining
+ * parameters and the configuration that affect the generated G-code.
+ * Recently used programs are kept in memory up to a byte limit and on disk
+ * up to another, the least recently used ones are evicted first.
+ *
+ * @author akouznet
+ */
+public class ProgramCache {
+
+    /**
+     * Part of every key, increment when generation changes so that programs
+     * cached on disk by older versions are not used.
+     */
+    private static final int VERSION = 5;
+    private static final String SUFFIX = ".nc";
+
+    private final Map<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final File directory;
+    private final long memoryLimit;
+    private final long diskLimit;
+    private long memorySize;
+    private int hits, misses;
+
+    /**
+     * @param directory where programs are stored, null to keep them in 
+     * memory only
+     */
+    public ProgramCache(File directory, long memoryLimit, long diskLimit) {
+        this.directory = directory;
+        this.memoryLimit = memoryLimit;
+        this.diskLimit = diskLimit;
+    }
+
+    /**
+     * Key of the program {@link PathConverter} generates from the arguments
+     * with the current configuration.
+     */
+    public static String key(Path outline, Point2D hole, Path initials, 
+            Map<Operation, OperationProfile> profiles, HeightMap heightMap) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new DigestOutputStream(new ByteArrayOutputStream(0), digest))) {
+            out.writeInt(VERSION);
+            for (Operation operation : Operation.values()) {
+                OperationProfile profile = profiles.get(operation);
+                out.writeInt(profile.getRpm());
+                out.writeDouble(profile.getFeed());
+                out.writeDouble(profile.getPlungeFeed());
+                out.writeDouble(profile.getDoc());
+                out.writeInt(profile.getPasses());
+            }
+            out.writeUTF(DEPTH_STRATEGY.name());
+            out.writeBoolean(COMPACT_GCODE);
+            out.writeBoolean(DISABLE_ARCS);
+            out.writeBoolean(DISABLE_ORDERING);
+            out.writeBoolean(ENABLE_FEED_SCHEDULING);
+            out.writeBoolean(DISABLE_SHORT_RETRACTS);
+            out.writeBoolean(DISABLE_HELICAL_HOLE);
+            for (double value : new double[] { ARC_TOLERANCE, CHORD_TOLERANCE, 
+                    MATERIAL_BASE_X, MATERIAL_BASE_Y, MATERIAL_BASE_Z, 
+                    MATERIAL_SIZE_X, MATERIAL_SIZE_Y, MATERIAL_SIZE_Z, 
+                    TOOL_DIAMETER, HOLE_DIAMETER, INITIALS_DOC,
+                    FEED_BOOST, MIN_FEED_FACTOR, RETRACT_CLEARANCE, SHORT_HOP }) {
+                out.writeDouble(value);
+            }
+            writePath(out, outline);
+            out.writeBoolean(hole != null);
+            if (hole != null) {
+                out.writeDouble(hole.getX());
+                out.writeDouble(hole.getY());
+            }
+            writePath(out, initials);
+            writeHeightMap(out, heightMap);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b));
+        }
+        return key.toString();
+    }
+
+    private static void writeHeightMap(DataOutputStream out, HeightMap heightMap) throws IOException {
+        if (heightMap == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(heightMap.getColumns());
+        out.writeInt(heightMap.getRows());
+        for (int r = 0; r < heightMap.getRows(); r++) {
+            out.writeDouble(heightMap.getY(r));
+            for (int c = 0; c < heightMap.getColumns(); c++) {
+                out.writeDouble(heightMap.getX(c));
+                out.writeDouble(heightMap.get(c, r));
+            }
+        }
+    }
+
+    private static void writePath(DataOutputStream out, Path path) throws IOException {
+        if (path == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(path.getElements().size());
+        for (PathElement element : path.getElements()) {
+            if (element instanceof MoveTo) {
+                MoveTo moveTo = (MoveTo) element;
+                out.writeByte('M');
+                out.writeDouble(moveTo.getX());
+                out.writeDouble(moveTo.getY());
+            } else if (element instanceof LineTo) {
+                LineTo lineTo = (LineTo) element;
+                out.writeByte('L');
+                out.writeDouble(lineTo.getX());
+                out.writeDouble(lineTo.getY());
+            } else if (element instanceof CubicCurveTo) {
+                CubicCurveTo curveTo = (CubicCurveTo) element;
+                out.writeByte('C');
+                out.writeDouble(curveTo.getControlX1());
+                out.writeDouble(curveTo.getControlY1());
+                out.writeDouble(curveTo.getControlX2());
+                out.writeDouble(curveTo.getControlY2());
+                out.writeDouble(curveTo.getX());
+                out.writeDouble(curveTo.getY());
+            } else if (element instanceof ClosePath) {
+                out.writeByte('Z');
+            } else {
+                out.writeUTF(element.toString());
+            }
+        }
+    }
+
+    /**
+     * Feeds a cached program to the sink without closing it.
+     * 
+     * @return false when the program is not cached
+     */
+    public boolean replay(String key, GcodeSink sink) {
+        byte[] program = lookup(key);
+        if (program == null) {
+            return false;
+        }
+        GcodeLine line = new GcodeLine();
+        int start = 0;
+        for (int i = 0; i < program.length; i++) {
+            if (program[i] == '\n') {
+                sink.accept(line.clear().append(
+                        new String(program, start, i - start, StandardCharsets.US_ASCII)));
+                start = i + 1;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a sink which stores the program under the key when it is
+     * closed, an aborted program is not stored.
+     */
+    public GcodeSink recorder(String key) {
+        ByteArrayOutputStream program = new ByteArrayOutputStream(64 * 1024);
+        return new GcodeSink() {
+            @Override
+            public void accept(GcodeLine line) {
+                program.write(line.array(), 0, line.length());
+                program.write('\n');
+            }
+
+            @Override
+            public void close() {
+                store(key, program.toByteArray());
+            }
+
+            @Override
+            public void abort() {
+            }
+        };
+    }
+
+    private synchronized byte[] lookup(String key) {
+        byte[] program = memory.get(key);
+        if (program == null && directory != null) {
+            File file = new File(directory, key + SUFFIX);
+            if (file.isFile()) {
+                try {
+                    program = Files.readAllBytes(file.toPath());
+                    file.setLastModified(System.currentTimeMillis());
+                    remember(key, program);
+                } catch (IOException ex) {
+                    Logger.getLogger(ProgramCache.class.getName())
+                            .log(Level.SEVERE, "Cannot read " + file, ex);
+                }
+            }
+        }
+        if (program == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        log("Program cache " + (program == null ? "miss" : "hit") 
+                + ", hits = " + hits + ", misses = " + misses);
+        return program;
+    }
+
+    private synchronized void store(String key, byte[] program) {
+        remember(key, program);
+        if (directory == null || program.length > diskLimit) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory.toPath());
+            File temp = new File(directory, key + ".tmp");
+            Files.write(temp.toPath(), program);
+            Files.move(temp.toPath(), new File(directory, key + SUFFIX).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            Logger.getLogger(ProgramCache.class.getName())
+                    .log(Level.SEVERE, "Cannot store program " + key, ex);
+        }
+        trimDisk();
+    }
+
+    private void remember(String key, byte[] program) {
+        if (program.length > memoryLimit) {
+            return;
+        }
+        byte[] old = memory.put(key, program);
+        memorySize += program.length - (old == null ? 0 : old.length);
+        Iterator<byte[]> eldest = memory.values().iterator();
+        while (memorySize > memoryLimit) {
+            memorySize -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    private void trimDisk() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; size > diskLimit && i < files.length; i++) {
+            size -= files[i].length();
+            if (!files[i].delete()) {
+                Logger.getLogger(ProgramCache.class.getName())
+                        .log(Level.SEVERE, "Cannot delete {0}", files[i]);
+            }
+        }
+    }
+
+    /**
+     * Adds the hit and miss counts so far.
+     */
+    public synchronized void summarize(JobSummary summary) {
+        summary.add("Program cache: %d hits, %d misses, %d bytes in memory", 
+                hits, misses, memorySize);
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.gcode;
+
+import static drawandcut.Configuration.*;
+import drawandcut.path.Contour;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks the height the tool travels at between contours. Short hops that
+ * stay over the sheet and do not cross a part that has been cut loose are
+ * made just above the material, everything else goes up to the safe 
+ * height.
+ *
+ * @author akouznet
+ */
+public class RetractPlanner {
+
+    private final double clearanceZ;
+    private final double safeZ;
+    private final double maxHop;
+    private final List<Path2D> released = new ArrayList<>();
+    private int shortHops, longHops;
+    private double savedZTravel;
+
+    /**
+     * @param maxHop longest hop made at the clearance height
+     */
+    public RetractPlanner(double clearanceZ, double safeZ, double maxHop) {
+        if (clearanceZ > safeZ) {
+            throw new IllegalArgumentException("Clearance " + clearanceZ 
+                    + " is above the safe height " + safeZ);
+        }
+        this.clearanceZ = clearanceZ;
+        this.safeZ = safeZ;
+        this.maxHop = maxHop;
+    }
+
+    /**
+     * Marks the area inside a closed contour cut through the material as
+     * possibly loose.
+     */
+    public void release(Contour contour) {
+        Path2D area = new Path2D.Double();
+        area.moveTo(contour.getX(0), contour.getY(0));
+        for (int i = 1; i < contour.size(); i++) {
+            area.lineTo(contour.getX(i), contour.getY(i));
+        }
+        area.closePath();
+        released.add(area);
+    }
+
+    /**
+     * Height to travel at from one point to the other.
+     */
+    public double travelZ(double fromX, double fromY, double toX, double toY) {
+        double length = Math.hypot(toX - fromX, toY - fromY);
+        if (length > maxHop || !overSheet(fromX, fromY) || !overSheet(toX, toY)
+                || crossesReleased(fromX, fromY, toX, toY, length)) {
+            longHops++;
+            return safeZ;
+        }
+        shortHops++;
+        savedZTravel += 2 * (safeZ - clearanceZ);
+        return clearanceZ;
+    }
+
+    private static boolean overSheet(double x, double y) {
+        return x >= MATERIAL_BASE_X && x <= MATERIAL_BASE_X + MATERIAL_SIZE_X
+                && y >= MATERIAL_BASE_Y && y <= MATERIAL_BASE_Y + MATERIAL_SIZE_Y;
+    }
+
+    /**
+     * Samples the hop between its ends, which lie on contours and so on
+     * the border of released areas.
+     */
+    private boolean crossesReleased(double fromX, double fromY, double toX, double toY, double length) {
+        if (released.isEmpty() || length == 0) {
+            return false;
+        }
+        int samples = Math.max(2, (int) Math.ceil(length / (TOOL_DIAMETER / 2)));
+        for (int i = 1; i < samples; i++) {
+            double t = (double) i / samples;
+            double x = fromX + (toX - fromX) * t;
+            double y = fromY + (toY - fromY) * t;
+            for (Path2D area : released) {
+                if (area.contains(x, y)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public void summarize(JobSummary summary) {
+        summary.add("Retracts: %d short hops %.1f mm above the material, %d to safe height, %.0f mm of Z travel saved",
+                shortHops, clearanceZ - (MATERIAL_BASE_Z + MATERIAL_SIZE_Z), longHops, savedZTravel);
+    }
+}
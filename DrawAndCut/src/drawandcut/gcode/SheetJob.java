@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.gcode;
+
+import static drawandcut.Configuration.*;
+import drawandcut.path.PathConversions;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import javafx.geometry.Point2D;
+import javafx.scene.shape.Path;
+
+/**
+ * Parts queued to be cut together from one sheet. Parts that do not fit
+ * on the sheet stay in the queue for the next one.
+ *
+ * @author akouznet
+ */
+public class SheetJob {
+
+    private final List<Part> parts = new ArrayList<>();
+
+    public synchronized void add(Path outline, Point2D hole, Path initials) {
+        parts.add(new Part(outline, hole, initials));
+    }
+
+    public synchronized int size() {
+        return parts.size();
+    }
+
+    /**
+     * Nests the largest parts first and cuts all that fit in one program 
+     * ordered as a whole. A part that does not fit even on an empty sheet 
+     * is cut where it was drawn.
+     */
+    public JobSummary cut(Map<Operation, OperationProfile> profiles, 
+            DepthStrategy strategy, HeightMap heightMap, GcodeSink sink) {
+        long start = System.nanoTime();
+        Nester nester = new Nester(new Rectangle2D.Double(MATERIAL_BASE_X, 
+                MATERIAL_BASE_Y, MATERIAL_SIZE_X, MATERIAL_SIZE_Y), 
+                TOOL_DIAMETER, NESTING_SPACING, NESTING_RESOLUTION, 
+                NESTING_ROTATIONS);
+        Path outlines = new Path();
+        List<Point2D> holes = new ArrayList<>();
+        Path initials = new Path();
+        int queued;
+        synchronized (this) {
+            queued = parts.size();
+            parts.sort(Comparator.comparingDouble(Part::area).reversed());
+            for (Iterator<Part> it = parts.iterator(); it.hasNext();) {
+                Part part = it.next();
+                AffineTransform transform = nester.place(part.outline);
+                if (transform != null) {
+                    part.append(transform, outlines, holes, initials);
+                    it.remove();
+                }
+            }
+            if (nester.getPlaced() == 0) {
+                if (parts.isEmpty()) {
+                    throw new IllegalStateException("No parts queued");
+                }
+                parts.remove(0).append(new AffineTransform(), outlines, holes, initials);
+            }
+        }
+        int cut = queued - size();
+        double nestingTime = (System.nanoTime() - start) / 1e6;
+        PathConverter pathConverter = new PathConverter(outlines, holes, 
+                initials, profiles, strategy, heightMap, sink);
+        JobSummary summary = pathConverter.getSummary();
+        nester.summarize(summary);
+        summary.add("Nesting took %.0f ms, %d parts left in the queue", 
+                nestingTime, queued - cut);
+        summary.add("Cycle time: %.1f min per part, %d parts", 
+                pathConverter.getEstimatedTime() / cut, cut);
+        return summary;
+    }
+
+    private static class Part {
+
+        private final Path outline;
+        private final Point2D hole;
+        private final Path initials;
+        private final double area; // of the bounds, to place large parts first
+
+        Part(Path outline, Point2D hole, Path initials) {
+            this.outline = outline;
+            this.hole = hole;
+            this.initials = initials;
+            Rectangle2D bounds = PathConversions.convertToPath2D(outline).getBounds2D();
+            this.area = bounds.getWidth() * bounds.getHeight();
+        }
+
+        double area() {
+            return area;
+        }
+
+        void append(AffineTransform transform, Path outlines, 
+                List<Point2D> holes, Path initials) {
+            outlines.getElements().addAll(
+                    Nester.transform(outline, transform).getElements());
+            if (hole != null) {
+                holes.add(Nester.transform(hole, transform));
+            }
+            if (this.initials != null) {
+                initials.getElements().addAll(
+                        Nester.transform(this.initials, transform).getElements());
+            }
+        }
+    }
+}
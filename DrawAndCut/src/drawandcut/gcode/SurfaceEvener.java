@@ -25,7 +25,10 @@ package drawandcut.gcode;
 
 import drawandcut.Configuration;
 import static drawandcut.Configuration.*;
+import drawandcut.path.PathConversions;
+import java.awt.geom.Rectangle2D;
 import java.util.List;
+import javafx.scene.shape.Path;
 
 /**
  *
@@ -33,18 +36,63 @@ import java.util.List;
  */
 public class SurfaceEvener {
     
-    private final GCodeGenerator gcg = new GCodeGenerator();
+    private final GCodeGenerator gcg;
+    private final JobSummary summary = new JobSummary();
     private final double plungeFeed;
     private final double feed;
     
     public SurfaceEvener(int rpm, double feed, double plungeFeed) {
+        this(rpm, feed, plungeFeed, new ListGcodeSink());
+    }
+
+    public SurfaceEvener(int rpm, double feed, double plungeFeed, GcodeSink sink) {
+        this(rpm, feed, plungeFeed, null, sink);
+    }
+
+    /**
+     * @param region area of the material to face, null for the whole sheet
+     */
+    public SurfaceEvener(OperationProfile profile, Rectangle2D region, GcodeSink sink) {
+        this(profile.getRpm(), profile.getFeed(), profile.getPlungeFeed(), region, sink);
+    }
+
+    /**
+     * @param region area of the material to face, null for the whole sheet
+     */
+    public SurfaceEvener(int rpm, double feed, double plungeFeed, Rectangle2D region, GcodeSink sink) {
+        this.gcg = new GCodeGenerator(sink, COMPACT_GCODE);
         this.feed = feed;
         this.plungeFeed = plungeFeed;
         gcg.init(rpm);
-        evenSurface();
+        if (region == null) {
+            evenSurface();
+        } else {
+            faceRegion(region);
+        }
         gcg.spindleStop();
         gcg.goHome();
         gcg.programEnd();
+        gcg.summarize(summary);
+        if (region != null) {
+            double fullSheetTime = new SurfaceEvener(rpm, feed, plungeFeed, line -> {})
+                    .gcg.getEstimatedTime();
+            summary.add("Facing %.0f x %.0f mm: %.1f min, %.1f min saved against the full sheet",
+                    region.getWidth(), region.getHeight(), gcg.getEstimatedTime(), 
+                    fullSheetTime - gcg.getEstimatedTime());
+        }
+    }
+
+    /**
+     * Area of the sheet the outline and the tool around it cover, with a
+     * margin of one tool diameter.
+     */
+    public static Rectangle2D facingRegion(Path outline) {
+        Rectangle2D bounds = PathConversions.convertToPath2D(outline).getBounds2D();
+        Rectangle2D region = new Rectangle2D.Double(
+                bounds.getMinX() - TOOL_DIAMETER, bounds.getMinY() - TOOL_DIAMETER, 
+                bounds.getWidth() + 2 * TOOL_DIAMETER, bounds.getHeight() + 2 * TOOL_DIAMETER);
+        return region.createIntersection(new Rectangle2D.Double(
+                MATERIAL_BASE_X, MATERIAL_BASE_Y, MATERIAL_SIZE_X, MATERIAL_SIZE_Y));
     }
 
     private void evenSurface() {
@@ -64,9 +112,58 @@ public class SurfaceEvener {
         }
         gcg.rapidZ(gcg.getSafeZ());
     }
+
+    /**
+     * Faces the region with passes along its longer side, so there are as
+     * few reversals as possible. Passes are spread evenly between the edges
+     * of the region no more than {@link Configuration#FACING_STEPOVER} tool 
+     * diameters apart and the tool never leaves the region.
+     */
+    private void faceRegion(Rectangle2D region) {
+        boolean alongX = region.getWidth() >= region.getHeight();
+        double radius = TOOL_DIAMETER / 2;
+        double alongMin = (alongX ? region.getMinX() : region.getMinY()) + radius;
+        double alongMax = (alongX ? region.getMaxX() : region.getMaxY()) - radius;
+        double acrossMin = (alongX ? region.getMinY() : region.getMinX()) + radius;
+        double acrossMax = (alongX ? region.getMaxY() : region.getMaxX()) - radius;
+        if (alongMax < alongMin) {
+            alongMin = alongMax = (alongMin + alongMax) / 2;
+        }
+        if (acrossMax < acrossMin) {
+            acrossMin = acrossMax = (acrossMin + acrossMax) / 2;
+        }
+        int steps = (int) Math.ceil((acrossMax - acrossMin) / (TOOL_DIAMETER * FACING_STEPOVER));
+        double step = steps == 0 ? 0 : (acrossMax - acrossMin) / steps;
+        move(true, alongX, alongMin, acrossMin);
+        gcg.linearZF(gcg.getBottomZ(), plungeFeed);
+        gcg.setFeed(feed);
+        double along = alongMin;
+        for (int i = 0; i <= steps; i++) {
+            if (i > 0) {
+                move(false, alongX, along, acrossMin + step * i);
+            }
+            along = along == alongMin ? alongMax : alongMin;
+            move(false, alongX, along, acrossMin + step * i);
+        }
+        gcg.rapidZ(gcg.getSafeZ());
+    }
+
+    private void move(boolean rapid, boolean alongX, double along, double across) {
+        double x = alongX ? along : across;
+        double y = alongX ? across : along;
+        if (rapid) {
+            gcg.rapid(x, y, gcg.getSafeZ());
+        } else {
+            gcg.linear(x, y);
+        }
+    }
     
     public List<String> getOutput() {
         return gcg.getOutput();
     }
+
+    public JobSummary getSummary() {
+        return summary;
+    }
     
 }
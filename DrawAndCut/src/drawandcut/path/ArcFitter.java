@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.path;
+
+/**
+ * Replaces runs of contour points lying on a common circle with circular
+ * arcs. Every point of a run and every chord between neighbouring points
+ * has to stay within the tolerance of the arc, runs shorter than
+ * {@link #MIN_SEGMENTS} segments are kept as lines.
+ *
+ * @author akouznet
+ */
+public class ArcFitter {
+
+    public static final int MIN_SEGMENTS = 3;
+    public static final double MAX_RADIUS = 1000; // mm
+    public static final double MAX_SWEEP = 1.5 * Math.PI;
+
+    /**
+     * Receives the fitted moves in contour order.
+     */
+    public interface Moves {
+
+        /**
+         * Line to point {@code to} of the contour.
+         */
+        void line(Contour contour, int to);
+
+        /**
+         * Arc replacing the segments between points {@code from} and 
+         * {@code to} of the contour.
+         */
+        void arc(Contour contour, int from, int to, 
+                double centerX, double centerY, boolean clockwise);
+    }
+
+    private final double tolerance;
+    private double centerX, centerY, radius;
+    private boolean clockwise;
+
+    public ArcFitter(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Emits moves from the first point through the end of the contour.
+     */
+    public void fit(Contour contour, Moves moves) {
+        int n = contour.size();
+        int start = 0;
+        while (start < n - 1) {
+            int end = start + MIN_SEGMENTS;
+            double cx = 0, cy = 0;
+            boolean cw = false;
+            int fitted = -1;
+            while (end < n && fits(contour, start, end)) {
+                fitted = end;
+                cx = centerX;
+                cy = centerY;
+                cw = clockwise;
+                end++;
+            }
+            if (fitted < 0) {
+                start++;
+                moves.line(contour, start);
+            } else {
+                moves.arc(contour, start, fitted, cx, cy, cw);
+                start = fitted;
+            }
+        }
+    }
+
+    private boolean fits(Contour c, int start, int end) {
+        if (!circle(c, start, (start + end) / 2, end)) {
+            return false;
+        }
+        double sweep = 0;
+        double sign = 0;
+        for (int i = start; i < end; i++) {
+            double ax = c.getX(i) - centerX, ay = c.getY(i) - centerY;
+            double bx = c.getX(i + 1) - centerX, by = c.getY(i + 1) - centerY;
+            if (Math.abs(Math.hypot(bx, by) - radius) > tolerance) {
+                return false;
+            }
+            double angle = Math.atan2(ax * by - ay * bx, ax * bx + ay * by);
+            if (angle == 0 || angle * sign < 0) {
+                return false;
+            }
+            sign = Math.signum(angle);
+            sweep += Math.abs(angle);
+            if (sweep > MAX_SWEEP
+                    || radius * (1 - Math.cos(angle / 2)) > tolerance) {
+                return false;
+            }
+        }
+        clockwise = sign < 0;
+        return true;
+    }
+
+    /**
+     * Circle through three points, false when they are (almost) collinear.
+     */
+    private boolean circle(Contour c, int i, int j, int k) {
+        double ax = c.getX(i), ay = c.getY(i);
+        double bx = c.getX(j) - ax, by = c.getY(j) - ay;
+        double dx = c.getX(k) - ax, dy = c.getY(k) - ay;
+        double d = 2 * (bx * dy - by * dx);
+        if (d == 0) {
+            return false;
+        }
+        double b2 = bx * bx + by * by, d2 = dx * dx + dy * dy;
+        double ux = (dy * b2 - by * d2) / d;
+        double uy = (bx * d2 - dx * b2) / d;
+        radius = Math.hypot(ux, uy);
+        if (radius > MAX_RADIUS) {
+            return false;
+        }
+        centerX = ax + ux;
+        centerY = ay + uy;
+        return true;
+    }
+}
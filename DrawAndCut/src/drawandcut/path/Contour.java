@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.path;
+
+import java.util.Arrays;
+
+/**
+ * One continuous polyline of a path, the points of a closed contour end with
+ * a copy of the first point.
+ *
+ * @author akouznet
+ */
+public class Contour {
+
+    private double[] xs = new double[16];
+    private double[] ys = new double[16];
+    private int size;
+    private boolean closed;
+
+    public Contour(double x, double y) {
+        add(x, y);
+    }
+
+    public void add(double x, double y) {
+        if (size == xs.length) {
+            xs = Arrays.copyOf(xs, size * 2);
+            ys = Arrays.copyOf(ys, size * 2);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+        closed = false;
+    }
+
+    /**
+     * Returns to the first point.
+     */
+    public void close() {
+        add(xs[0], ys[0]);
+        closed = true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getX(int i) {
+        return xs[i];
+    }
+
+    public double getY(int i) {
+        return ys[i];
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public double length() {
+        double length = 0;
+        for (int i = 1; i < size; i++) {
+            length += Math.hypot(xs[i] - xs[i - 1], ys[i] - ys[i - 1]);
+        }
+        return length;
+    }
+
+    /**
+     * Same closed contour traversed from point {@code start} in the same
+     * direction.
+     */
+    public Contour startingAt(int start) {
+        if (!closed) {
+            throw new IllegalStateException("Only a closed contour can start anywhere");
+        }
+        Contour result = new Contour(xs[start], ys[start]);
+        for (int i = 1; i < size - 1; i++) {
+            int j = (start + i) % (size - 1);
+            result.add(xs[j], ys[j]);
+        }
+        result.close();
+        return result;
+    }
+
+    /**
+     * Same points in reverse order.
+     */
+    public Contour reversed() {
+        Contour result = new Contour(xs[size - 1], ys[size - 1]);
+        for (int i = size - 2; i >= 0; i--) {
+            result.add(xs[i], ys[i]);
+        }
+        result.closed = closed;
+        return result;
+    }
+
+    /**
+     * Even-odd test of a point against the polygon of a closed contour.
+     */
+    public boolean contains(double x, double y) {
+        boolean inside = false;
+        for (int i = 0, j = size - 1; i < size; j = i++) {
+            if ((ys[i] > y) != (ys[j] > y)
+                    && x < (xs[j] - xs[i]) * (y - ys[i]) / (ys[j] - ys[i]) + xs[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.path;
+
+import java.util.Arrays;
+
+/**
+ * Moves fitted to a contour once, replayed for every pass over it. Fitting
+ * does not depend on the tool state so contours can be fitted concurrently.
+ *
+ * @author akouznet
+ */
+public class FittedContour {
+
+    private final Contour contour;
+    private int[] ends = new int[16];
+    private int[] starts = new int[16];
+    private double[] centers = new double[32];
+    private boolean[] clockwise = new boolean[16];
+    private int size;
+
+    private FittedContour(Contour contour) {
+        this.contour = contour;
+    }
+
+    /**
+     * @param fitter fitter used by the calling thread only, null to cut the
+     * contour with lines
+     */
+    public static FittedContour fit(Contour contour, ArcFitter fitter) {
+        FittedContour result = new FittedContour(contour);
+        if (fitter == null) {
+            for (int i = 1; i < contour.size(); i++) {
+                result.add(i - 1, i, Double.NaN, Double.NaN, false);
+            }
+        } else {
+            fitter.fit(contour, result.new Recorder());
+        }
+        return result;
+    }
+
+    /**
+     * Fits arcs to the dense contour first and then decimates only the runs
+     * of points left to lines, so that every point of the cut is within the
+     * arc tolerance or the decimation tolerance of the contour, never both.
+     * @param fitter fitter used by the calling thread only, null to cut the
+     * contour with lines
+     */
+    public static FittedContour fit(Contour contour, ArcFitter fitter, 
+            PolylineSimplifier simplifier) {
+        if (fitter == null) {
+            return fit(simplifier.simplify(contour), null);
+        }
+        return fit(contour, fitter).decimate(simplifier);
+    }
+
+    private FittedContour decimate(PolylineSimplifier simplifier) {
+        int n = contour.size();
+        boolean[] keep = new boolean[n];
+        keep[0] = keep[n - 1] = true;
+        for (int m = 0; m < size; ) {
+            if (!Double.isNaN(centers[2 * m])) {
+                Arrays.fill(keep, starts[m], ends[m] + 1, true);
+                m++;
+                continue;
+            }
+            int first = starts[m];
+            while (m < size && Double.isNaN(centers[2 * m])) {
+                m++;
+            }
+            int last = ends[m - 1];
+            keep[first] = keep[last] = true;
+            simplifier.simplify(contour, first, last, keep);
+        }
+        int[] index = new int[n];
+        Contour decimated = new Contour(contour.getX(0), contour.getY(0));
+        for (int i = 1; i < n; i++) {
+            if (keep[i]) {
+                if (i == n - 1 && contour.isClosed()) {
+                    decimated.close();
+                } else {
+                    decimated.add(contour.getX(i), contour.getY(i));
+                }
+                index[i] = decimated.size() - 1;
+            }
+        }
+        FittedContour result = new FittedContour(decimated);
+        for (int m = 0; m < size; m++) {
+            if (!keep[ends[m]]) {
+                continue;
+            }
+            int to = index[ends[m]];
+            if (Double.isNaN(centers[2 * m])) {
+                result.add(to - 1, to, Double.NaN, Double.NaN, false);
+            } else {
+                result.add(index[starts[m]], to, 
+                        centers[2 * m], centers[2 * m + 1], clockwise[m]);
+            }
+        }
+        return result;
+    }
+
+    private void add(int from, int to, double centerX, double centerY, boolean cw) {
+        if (size == ends.length) {
+            ends = Arrays.copyOf(ends, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            centers = Arrays.copyOf(centers, size * 4);
+            clockwise = Arrays.copyOf(clockwise, size * 2);
+        }
+        starts[size] = from;
+        ends[size] = to;
+        centers[2 * size] = centerX;
+        centers[2 * size + 1] = centerY;
+        clockwise[size] = cw;
+        size++;
+    }
+
+    /**
+     * Emits the recorded moves in the order they were fitted.
+     */
+    public void replay(ArcFitter.Moves moves) {
+        for (int m = 0; m < size; m++) {
+            double centerX = centers[2 * m];
+            if (Double.isNaN(centerX)) {
+                moves.line(contour, ends[m]);
+            } else {
+                moves.arc(contour, starts[m], ends[m], 
+                        centerX, centers[2 * m + 1], clockwise[m]);
+            }
+        }
+    }
+
+    /**
+     * Number of lines and arcs, one less than the points the tool goes
+     * through.
+     */
+    public int getMoveCount() {
+        return size;
+    }
+
+    public Contour getContour() {
+        return contour;
+    }
+
+    private class Recorder implements ArcFitter.Moves {
+
+        @Override
+        public void line(Contour contour, int to) {
+            add(to - 1, to, Double.NaN, Double.NaN, false);
+        }
+
+        @Override
+        public void arc(Contour contour, int from, int to, 
+                double centerX, double centerY, boolean clockwise) {
+            add(from, to, centerX, centerY, clockwise);
+        }
+    }
+}
@@ -25,6 +25,8 @@ package drawandcut.path;
 
 import java.awt.geom.Path2D;
 import java.awt.geom.PathIterator;
+import java.util.ArrayList;
+import java.util.List;
 import javafx.collections.ObservableList;
 import javafx.scene.shape.ClosePath;
 import javafx.scene.shape.CubicCurveTo;
@@ -89,4 +91,37 @@ public final class PathConversions {
         }
         return path;
     }
+
+    /**
+     * Splits a path of MoveTo, LineTo and ClosePath elements into contours.
+     * A LineTo after ClosePath continues the closed contour.
+     */
+    public static List<Contour> convertToContours(Path path) {
+        List<Contour> contours = new ArrayList<>();
+        Contour contour = null;
+        for (PathElement element : path.getElements()) {
+            if (element instanceof MoveTo) {
+                MoveTo mt = (MoveTo) element;
+                contour = new Contour(mt.getX(), mt.getY());
+                contours.add(contour);
+            } else if (element instanceof LineTo) {
+                assertStarted(contour);
+                LineTo lt = (LineTo) element;
+                contour.add(lt.getX(), lt.getY());
+            } else if (element instanceof ClosePath) {
+                assertStarted(contour);
+                contour.close();
+            } else {
+                throw new IllegalArgumentException("Unsupported path element: "
+                        + element);
+            }
+        }
+        return contours;
+    }
+
+    private static void assertStarted(Contour contour) {
+        if (contour == null) {
+            throw new IllegalStateException("Path has not been started");
+        }
+    }
 }
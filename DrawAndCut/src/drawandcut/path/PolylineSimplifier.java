@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.path;
+
+/**
+ * Douglas-Peucker decimation of polylines. Removed points are never further
+ * than the tolerance from the simplified polyline.
+ *
+ * @author akouznet
+ */
+public class PolylineSimplifier {
+
+    private final double tolerance;
+
+    public PolylineSimplifier(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public Contour simplify(Contour contour) {
+        int n = contour.size();
+        if (n <= 2) {
+            return contour;
+        }
+        boolean[] keep = new boolean[n];
+        keep[0] = keep[n - 1] = true;
+        simplify(contour, 0, n - 1, keep);
+        Contour result = new Contour(contour.getX(0), contour.getY(0));
+        for (int i = 1; i < n - 1; i++) {
+            if (keep[i]) {
+                result.add(contour.getX(i), contour.getY(i));
+            }
+        }
+        if (contour.isClosed()) {
+            result.close();
+        } else {
+            result.add(contour.getX(n - 1), contour.getY(n - 1));
+        }
+        return result;
+    }
+
+    /**
+     * Marks the points between {@code first} and {@code last} the simplified
+     * polyline goes through, the two ends are kept anyway.
+     */
+    public void simplify(Contour contour, int first, int last, boolean[] keep) {
+        if (last - first < 2) {
+            return;
+        }
+        int[] stack = new int[2 * (last - first + 1)];
+        int top = 0;
+        stack[top++] = first;
+        stack[top++] = last;
+        while (top > 0) {
+            int b = stack[--top];
+            int a = stack[--top];
+            double max = tolerance;
+            int index = -1;
+            for (int i = a + 1; i < b; i++) {
+                double d = distance(contour, i, a, b);
+                if (d > max) {
+                    max = d;
+                    index = i;
+                }
+            }
+            if (index >= 0) {
+                keep[index] = true;
+                stack[top++] = a;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = b;
+            }
+        }
+    }
+
+    /**
+     * Distance from point i to the segment between points a and b.
+     */
+    private static double distance(Contour c, int i, int a, int b) {
+        double ax = c.getX(a), ay = c.getY(a);
+        double dx = c.getX(b) - ax, dy = c.getY(b) - ay;
+        double px = c.getX(i) - ax, py = c.getY(i) - ay;
+        double length2 = dx * dx + dy * dy;
+        double t = length2 == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / length2));
+        return Math.hypot(px - t * dx, py - t * dy);
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.path;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Orders contours to shorten the travel between them. A nearest neighbour
+ * tour is improved with 2-opt and Or-opt moves, closed contours may start at
+ * any of their points and open strokes may be cut in either direction. 
+ * Closed contours keep their direction and a contour lying inside another
+ * closed contour is always cut first, so the part is released last.
+ *
+ * @author akouznet
+ */
+public class ToolpathOrderer {
+
+    private static final int MAX_ROUNDS = 20;
+    private static final int MAX_OR_OPT_LENGTH = 3;
+    private static final double EPSILON = 1e-6; // mm
+
+    private final List<Contour> contours;
+    private final int n;
+    private final double startX, startY;
+    private final List<int[]> precedence = new ArrayList<>();
+    private int[] order;
+    private int[] entry;
+    private boolean[] reversed;
+
+    /**
+     * @param startX X the tool starts from
+     * @param startY Y the tool starts from
+     */
+    public ToolpathOrderer(List<Contour> contours, double startX, double startY) {
+        this.contours = contours;
+        this.n = contours.size();
+        this.startX = startX;
+        this.startY = startY;
+        for (int inner = 0; inner < n; inner++) {
+            for (int outer = 0; outer < n; outer++) {
+                Contour o = contours.get(outer);
+                Contour i = contours.get(inner);
+                if (inner != outer && o.isClosed() && i.size() > 0
+                        && o.contains(i.getX(0), i.getY(0))) {
+                    precedence.add(new int[] {inner, outer});
+                }
+            }
+        }
+    }
+
+    public List<Contour> order() {
+        entry = new int[n];
+        reversed = new boolean[n];
+        nearestNeighbour();
+        double cost = cost(order, reversed);
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            twoOpt();
+            orOpt();
+            chooseEntries();
+            double newCost = cost(order, reversed);
+            if (newCost > cost - EPSILON) {
+                break;
+            }
+            cost = newCost;
+        }
+        List<Contour> result = new ArrayList<>(n);
+        for (int k : order) {
+            Contour c = contours.get(k);
+            if (c.isClosed()) {
+                result.add(entry[k] == 0 ? c : c.startingAt(entry[k]));
+            } else {
+                result.add(reversed[k] ? c.reversed() : c);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Length of the straight moves between contours cut in the given order.
+     */
+    public static double travel(List<Contour> contours, double x, double y) {
+        double travel = 0;
+        for (Contour c : contours) {
+            travel += Math.hypot(c.getX(0) - x, c.getY(0) - y);
+            x = c.getX(c.size() - 1);
+            y = c.getY(c.size() - 1);
+        }
+        return travel;
+    }
+
+    private void nearestNeighbour() {
+        order = new int[n];
+        boolean[] visited = new boolean[n];
+        double x = startX, y = startY;
+        for (int step = 0; step < n; step++) {
+            int best = -1;
+            double bestDistance = Double.POSITIVE_INFINITY;
+            for (int k = 0; k < n; k++) {
+                if (visited[k] || !available(k, visited)) {
+                    continue;
+                }
+                double d = nearestEntry(k, x, y);
+                if (d < bestDistance) {
+                    best = k;
+                    bestDistance = d;
+                }
+            }
+            if (best < 0) {
+                // Contours nested in each other, e.g. the same one twice
+                for (best = 0; visited[best]; best++) {
+                }
+            }
+            // Sets entry/reversed of the chosen contour
+            nearestEntry(best, x, y);
+            visited[best] = true;
+            order[step] = best;
+            x = exitX(best, reversed);
+            y = exitY(best, reversed);
+        }
+    }
+
+    private boolean available(int k, boolean[] visited) {
+        for (int[] p : precedence) {
+            if (p[1] == k && !visited[p[0]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private double nearestEntry(int k, double x, double y) {
+        Contour c = contours.get(k);
+        if (!c.isClosed()) {
+            double first = Math.hypot(c.getX(0) - x, c.getY(0) - y);
+            double last = Math.hypot(c.getX(c.size() - 1) - x, c.getY(c.size() - 1) - y);
+            reversed[k] = last < first;
+            return Math.min(first, last);
+        }
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < c.size() - 1; i++) {
+            double d = Math.hypot(c.getX(i) - x, c.getY(i) - y);
+            if (d < best) {
+                best = d;
+                entry[k] = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Reverses the sequence between i and j flipping open strokes.
+     */
+    private void twoOpt() {
+        double cost = cost(order, reversed);
+        for (int i = 0; i < n - 1; i++) {
+            for (int j = i + 1; j < n; j++) {
+                int[] o = order.clone();
+                boolean[] r = reversed.clone();
+                for (int a = i, b = j; a <= b; a++, b--) {
+                    int t = o[a];
+                    o[a] = o[b];
+                    o[b] = t;
+                }
+                for (int a = i; a <= j; a++) {
+                    r[o[a]] = !r[o[a]];
+                }
+                double newCost = cost(o, r);
+                if (newCost < cost - EPSILON && valid(o)) {
+                    order = o;
+                    reversed = r;
+                    cost = newCost;
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves short runs of contours elsewhere, optionally reversed.
+     */
+    private void orOpt() {
+        double cost = cost(order, reversed);
+        for (int length = 1; length <= MAX_OR_OPT_LENGTH; length++) {
+            for (int i = 0; i + length <= n; i++) {
+                for (int p = 0; p <= n - length; p++) {
+                    if (p == i) {
+                        continue;
+                    }
+                    for (int flip = 0; flip < 2; flip++) {
+                        int[] o = moveRun(order, i, length, p, flip == 1);
+                        boolean[] r = reversed.clone();
+                        if (flip == 1) {
+                            for (int a = p; a < p + length; a++) {
+                                r[o[a]] = !r[o[a]];
+                            }
+                        }
+                        double newCost = cost(o, r);
+                        if (newCost < cost - EPSILON && valid(o)) {
+                            order = o;
+                            reversed = r;
+                            cost = newCost;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes {@code length} items from {@code i} and inserts them so that
+     * they start at {@code p} in the result.
+     */
+    private static int[] moveRun(int[] order, int i, int length, int p, boolean flip) {
+        int n = order.length;
+        int[] rest = new int[n - length];
+        for (int a = 0, b = 0; a < n; a++) {
+            if (a < i || a >= i + length) {
+                rest[b++] = order[a];
+            }
+        }
+        int[] o = new int[n];
+        System.arraycopy(rest, 0, o, 0, p);
+        for (int a = 0; a < length; a++) {
+            o[p + a] = order[flip ? i + length - 1 - a : i + a];
+        }
+        System.arraycopy(rest, p, o, p + length, n - length - p);
+        return o;
+    }
+
+    /**
+     * Picks the start point of every closed contour between its neighbours.
+     */
+    private void chooseEntries() {
+        for (int step = 0; step < n; step++) {
+            int k = order[step];
+            Contour c = contours.get(k);
+            if (!c.isClosed()) {
+                continue;
+            }
+            double px = step == 0 ? startX : exitX(order[step - 1], reversed);
+            double py = step == 0 ? startY : exitY(order[step - 1], reversed);
+            boolean last = step == n - 1;
+            double nx = last ? 0 : entryX(order[step + 1], reversed);
+            double ny = last ? 0 : entryY(order[step + 1], reversed);
+            double best = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < c.size() - 1; i++) {
+                double d = Math.hypot(c.getX(i) - px, c.getY(i) - py)
+                        + (last ? 0 : Math.hypot(nx - c.getX(i), ny - c.getY(i)));
+                if (d < best) {
+                    best = d;
+                    entry[k] = i;
+                }
+            }
+        }
+    }
+
+    private boolean valid(int[] o) {
+        int[] position = new int[n];
+        for (int a = 0; a < n; a++) {
+            position[o[a]] = a;
+        }
+        for (int[] p : precedence) {
+            if (position[p[0]] > position[p[1]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private double cost(int[] o, boolean[] r) {
+        double x = startX, y = startY;
+        double cost = 0;
+        for (int k : o) {
+            cost += Math.hypot(entryX(k, r) - x, entryY(k, r) - y);
+            x = exitX(k, r);
+            y = exitY(k, r);
+        }
+        return cost;
+    }
+
+    private double entryX(int k, boolean[] r) {
+        Contour c = contours.get(k);
+        return c.getX(c.isClosed() ? entry[k] : r[k] ? c.size() - 1 : 0);
+    }
+
+    private double entryY(int k, boolean[] r) {
+        Contour c = contours.get(k);
+        return c.getY(c.isClosed() ? entry[k] : r[k] ? c.size() - 1 : 0);
+    }
+
+    private double exitX(int k, boolean[] r) {
+        Contour c = contours.get(k);
+        return c.getX(c.isClosed() ? entry[k] : r[k] ? 0 : c.size() - 1);
+    }
+
+    private double exitY(int k, boolean[] r) {
+        Contour c = contours.get(k);
+        return c.getY(c.isClosed() ? entry[k] : r[k] ? 0 : c.size() - 1);
+    }
+}
@@ -26,6 +26,7 @@ package drawandcut.ui;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
+import javafx.scene.control.Label;
 import javafx.scene.control.ToggleButton;
 import javafx.scene.layout.GridPane;
 
@@ -39,17 +40,23 @@ public class ControlPane extends GridPane {
     private final ToggleButton draw = new ToggleButton("Draw");
 
     private final Button cut = new Button("Cut");
+    private final Button queue = new Button("Add to sheet");
     private final ToggleButton load = new ToggleButton("Load");
     private final ToggleButton exit = new ToggleButton("Exit");
     private final Button even = new Button("Make surface even");
+    private final Button probe = new Button("Probe surface");
+    private final Label status = new Label();
 
     public ControlPane() {
         scan.setId("scan");
         draw.setId("draw");
         load.setId("load");
         cut.setId("cut");
+        queue.setId("queue");
         exit.setId("exit");
         even.setId("even");
+        probe.setId("probe");
+        status.setId("status");
 
         setId("controlPane");
         setPadding(new Insets(PADDING));
@@ -60,17 +67,30 @@ public class ControlPane extends GridPane {
         addRow(rowIndex++, scan);
         addRow(rowIndex++, draw);
         addRow(rowIndex++, load);
+        if (ENABLE_NESTING) {
+            addRow(rowIndex++, queue);
+        }
         addRow(rowIndex++, cut);
         if (ENABLE_EVENER) {
             addRow(rowIndex++, even);
         }
+        if (ENABLE_HEIGHT_MAP) {
+            addRow(rowIndex++, probe);
+        }
         addRow(rowIndex++, exit);
+        if (!DISABLE_CUTTER) {
+            addRow(rowIndex++, status);
+        }
     }
 
     public Button cutButton() {
         return cut;
     }
 
+    public Button queueButton() {
+        return queue;
+    }
+
     public ToggleButton loadButton() {
         return load;
     }
@@ -90,4 +110,12 @@ public class ControlPane extends GridPane {
     public Button evenButton() {
         return even;
     }
+
+    public Button probeButton() {
+        return probe;
+    }
+
+    public Label statusLabel() {
+        return status;
+    }
 }
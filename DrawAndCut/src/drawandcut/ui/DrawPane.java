@@ -550,6 +550,30 @@ public class DrawPane extends BorderPane {
         drawing.set(new Drawing(0, 0)); // TODO: Fix this workaround to indicate there is a drawing
         reset();
         
+        SVGPath svgPath = createSVGPath(svg, size);
+        outline.set(convertToOutline(svgPath, importSource, outliner));
+        configOutline();
+
+        importedShapeInterior = new Group(svgPath);
+        svgPath.setFill(SHAPE_INTERIOR_COLOR);
+        importedShapeInterior.setMouseTransparent(true);
+        importedShapeInterior.setManaged(false);
+        importedShapeInterior.getTransforms().addAll(
+                new Translate(0, -Configuration.MATERIAL_SIZE_Y),
+                new Scale(pxPerMm.get(), -pxPerMm.get(), 0, MATERIAL_SIZE_Y));
+        importedShapeInterior.setUserData(SortOrder.INTERIOR.ordinal());
+        interior = Shape.union(svgPath, new Rectangle(0, 0));
+        importedShapeInterior.layoutXProperty().bind(canvas.layoutXProperty());
+        importedShapeInterior.layoutYProperty().bind(canvas.layoutYProperty());
+        stackPane.getChildren().addAll(importedShapeInterior);
+
+        positionHole();
+    }
+
+    /**
+     * SVG path scaled to fit {@code size} and centered on the material.
+     */
+    public static SVGPath createSVGPath(String svg, double size) {
         SVGPath svgPath = new SVGPath();
         svgPath.setContent(svg);
         svgPath.setFillRule(FillRule.EVEN_ODD);
@@ -565,6 +589,13 @@ public class DrawPane extends BorderPane {
                             -b.getMinY() * -scale + (MATERIAL_SIZE_Y - b.getHeight() * -scale) / 2),
                     new Scale(scale, -scale));
         }
+        return svgPath;
+    }
+
+    /**
+     * Outline to cut for an SVG path made by {@link #createSVGPath}.
+     */
+    public static Path convertToOutline(SVGPath svgPath, ImportSource importSource, Outliner outliner) {
         Path path = (Path) Shape.union(svgPath, new Rectangle(0, 0));
         printPathCount(path, "path");
         Path simplifiedPath = simplify(path);
@@ -583,23 +614,7 @@ public class DrawPane extends BorderPane {
             default:
                 throw new IllegalStateException("Unexpected import source: " + importSource);
         }
-        outline.set(outlinePath);
-        configOutline();
-
-        importedShapeInterior = new Group(svgPath);
-        svgPath.setFill(SHAPE_INTERIOR_COLOR);
-        importedShapeInterior.setMouseTransparent(true);
-        importedShapeInterior.setManaged(false);
-        importedShapeInterior.getTransforms().addAll(
-                new Translate(0, -Configuration.MATERIAL_SIZE_Y),
-                new Scale(pxPerMm.get(), -pxPerMm.get(), 0, MATERIAL_SIZE_Y));
-        importedShapeInterior.setUserData(SortOrder.INTERIOR.ordinal());
-        interior = Shape.union(svgPath, new Rectangle(0, 0));
-        importedShapeInterior.layoutXProperty().bind(canvas.layoutXProperty());
-        importedShapeInterior.layoutYProperty().bind(canvas.layoutYProperty());
-        stackPane.getChildren().addAll(importedShapeInterior);
-
-        positionHole();
+        return outlinePath;
     }
     
     private static void printPathCount(Path path, String name) {
@@ -607,7 +622,7 @@ public class DrawPane extends BorderPane {
                 elem -> elem instanceof MoveTo).count());
     }
 
-    private Path simplify(Path path) {
+    private static Path simplify(Path path) {
         // step 1: remove cubic curves
         Path path1 = PathConversions.convertToPath(PathConversions.convertToPath2D(
                 path).getPathIterator(null, Configuration.FLATNESS));
@@ -25,7 +25,9 @@ package drawandcut.ui;
 
 import drawandcut.Configuration;
 import drawandcut.util.LineSegment;
+import drawandcut.util.StrokeFont;
 import drawandcut.util.Text2DHelper;
+import java.util.stream.Collectors;
 import javafx.geometry.BoundingBox;
 import javafx.geometry.Bounds;
 import javafx.scene.layout.BorderPane;
@@ -41,6 +43,7 @@ public class TextPane extends BorderPane {
     private final Path all = new Path();
     private final String fontFace;
     private final int fontSize;
+    private final StrokeFont strokeFont = Configuration.STROKE_FONT ? new StrokeFont() : null;
     private String text;
 
     public TextPane() {
@@ -81,6 +84,17 @@ public class TextPane extends BorderPane {
     public void setText(String text) {
         this.text = text;
         all.getElements().clear();
+        if (strokeFont != null) {
+            // Laid out in mm on the material, scaled to the pane
+            double pxPerMm = materialBounds.getWidth() / Configuration.MATERIAL_SIZE_X;
+            all.getElements().setAll(strokeFont.layout(text == null ? "" : text, 
+                    Configuration.STROKE_FONT_HEIGHT, 
+                    new BoundingBox(0, 0, Configuration.MATERIAL_SIZE_X, Configuration.MATERIAL_SIZE_Y), 
+                    Configuration.TOOL_DIAMETER).getElements().stream()
+                    .map(new DrawPane.PathElementMapper(x -> x * pxPerMm, y -> y * pxPerMm))
+                    .collect(Collectors.toList()));
+            return;
+        }
         for (LineSegment lineSegment : new Text2DHelper(text, fontFace, getScaledFontSize(), materialBounds.getWidth(), materialBounds.getHeight()).getLineSegment()) {
             Path path = lineSegment.getPath();
             all.getElements().addAll(path.getElements());
@@ -0,0 +1,276 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Oracle.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package drawandcut.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javafx.geometry.Bounds;
+import javafx.scene.shape.LineTo;
+import javafx.scene.shape.MoveTo;
+import javafx.scene.shape.Path;
+
+/**
+ * Built-in single stroke font. Every glyph is a few open polylines cut 
+ * once along their centers instead of around the outlines of a filled
+ * font. Glyphs are capitals drawn on a grid with the baseline at 0 and the 
+ * top of the capitals at {@link #CAP_HEIGHT}, lower case letters are set
+ * as capitals.
+ *
+ * @author akouznet
+ */
+public class StrokeFont {
+
+    public static final double CAP_HEIGHT = 10;
+    private static final double DESCENT = 2;
+    private static final double SPACE_WIDTH = 5;
+    /**
+     * Distance between the closest strokes of neighbouring glyphs, wide
+     * enough for the tool at the usual text heights.
+     */
+    private static final double GAP = 2.5;
+    private static final double ARC_STEP = Math.toRadians(15);
+    /**
+     * Horizontal bands glyphs are compared in when kerning.
+     */
+    private static final int BANDS = 13;
+    private static final double BAND_HEIGHT = (CAP_HEIGHT + DESCENT) / BANDS;
+
+    /**
+     * Strokes are separated by ';', a stroke is a sequence of "x,y" points
+     * and "a:cx,cy,r,from,to" or "a:cx,cy,rx,ry,from,to" arcs with angles
+     * in degrees, counterclockwise when to is greater than from.
+     */
+    private static final String[][] GLYPHS = {
+        { "A", "0,0 4,10 8,0; 1.5,3.5 6.5,3.5" },
+        { "B", "0,0 0,10 4.5,10 a:4.5,7.5,2.5,90,-90 0,5 5,5 a:5,2.5,2.5,90,-90 0,0" },
+        { "C", "a:5,5,5,40,320" },
+        { "D", "0,0 0,10 3,10 a:3,5,5,90,-90 0,0" },
+        { "E", "8,10 0,10 0,0 8,0; 0,5 6,5" },
+        { "F", "8,10 0,10 0,0; 0,5 6,5" },
+        { "G", "a:5,5,5,50,360 6,5" },
+        { "H", "0,0 0,10; 8,0 8,10; 0,5 8,5" },
+        { "I", "0,0 0,10" },
+        { "J", "6,10 6,3 a:3,3,3,0,-180" },
+        { "K", "0,0 0,10; 7,10 0,3; 2.5,5.5 7.5,0" },
+        { "L", "0,10 0,0 7,0" },
+        { "M", "0,0 0,10 5,3 10,10 10,0" },
+        { "N", "0,0 0,10 8,0 8,10" },
+        { "O", "a:5,5,5,0,360" },
+        { "P", "0,0 0,10 5,10 a:5,7.5,2.5,90,-90 0,5" },
+        { "Q", "a:5,5,5,0,360; 6,3 10,-0.5" },
+        { "R", "0,0 0,10 5,10 a:5,7.5,2.5,90,-90 0,5; 4,5 8,0" },
+        { "S", "a:4,7.5,4,2.5,30,270 a:4,2.5,4,2.5,90,-150" },
+        { "T", "0,10 8,10; 4,10 4,0" },
+        { "U", "0,10 0,3.5 a:4,3.5,4,3.5,180,360 8,10" },
+        { "V", "0,10 4,0 8,10" },
+        { "W", "0,10 2.5,0 5,7 7.5,0 10,10" },
+        { "X", "0,10 8,0; 0,0 8,10" },
+        { "Y", "0,10 4,5 8,10; 4,5 4,0" },
+        { "Z", "0,10 8,10 0,0 8,0" },
+        { "0", "a:4,5,4,5,0,360" },
+        { "1", "1.5,8 4,10 4,0" },
+        { "2", "a:4,7,4,3,160,-20 0,0 8,0" },
+        { "3", "a:4,7.5,3.5,2.5,150,-90 a:4,2.5,4,2.5,90,-150" },
+        { "4", "6,0 6,10 0,3 8,3" },
+        { "5", "7,10 1,10 0.6,5.6 a:4,3.25,3.75,3.25,130,-150" },
+        { "6", "a:4,5,4,5,60,180 a:4,3,4,3,180,540" },
+        { "7", "0,10 8,10 3,0" },
+        { "8", "a:4,7.5,3.5,2.5,-90,270 a:4,2.5,4,2.5,90,450" },
+        { "9", "a:4,7,4,3,0,360 a:4,5,4,5,0,-120" },
+        { ".", "0,0 0,0.5" },
+        { ",", "0.5,0.5 0,-1.5" },
+        { ":", "0,0 0,0.5; 0,5 0,5.5" },
+        { "'", "0,10 0,7" },
+        { "-", "0,5 5,5" },
+        { "+", "0,5 6,5; 3,2 3,8" },
+        { "/", "0,0 6,10" },
+        { "!", "0,10 0,3; 0,0 0,0.5" },
+        { "?", "a:3.5,7.5,3.5,2.5,160,-90 3.5,3; 3.5,0 3.5,0.5" },
+    };
+
+    private final Map<Character, Glyph> glyphs = new HashMap<>();
+
+    public StrokeFont() {
+        for (String[] glyph : GLYPHS) {
+            glyphs.put(glyph[0].charAt(0), new Glyph(glyph[1]));
+        }
+    }
+
+    /**
+     * Lays a line of text out centered in the bounds, with y growing 
+     * downwards like on the screen. Text that would not fit is made 
+     * smaller.
+     *
+     * @param height height of the capitals, in the units of the bounds
+     * @param margin space to keep free along the edges of the bounds
+     */
+    public Path layout(String text, double height, Bounds bounds, double margin) {
+        List<Glyph> line = new ArrayList<>();
+        List<Double> offsets = new ArrayList<>();
+        double width = 0;
+        Glyph previous = null;
+        for (char c : text.toUpperCase(Locale.ROOT).toCharArray()) {
+            if (Character.isWhitespace(c)) {
+                width += SPACE_WIDTH;
+                previous = null;
+                continue;
+            }
+            Glyph glyph = glyphs.getOrDefault(c, glyphs.get('?'));
+            double offset = previous == null ? width 
+                    : offsets.get(offsets.size() - 1) + previous.kern(glyph);
+            line.add(glyph);
+            offsets.add(offset);
+            width = Math.max(width, offset + glyph.width);
+            previous = glyph;
+        }
+        Path path = new Path();
+        if (line.isEmpty()) {
+            return path;
+        }
+        double scale = Math.min(height / CAP_HEIGHT, Math.min(
+                (bounds.getWidth() - 2 * margin) / width,
+                (bounds.getHeight() - 2 * margin) / (CAP_HEIGHT + DESCENT)));
+        double left = bounds.getMinX() + (bounds.getWidth() - width * scale) / 2;
+        double baseline = bounds.getMinY() + (bounds.getHeight() + CAP_HEIGHT * scale) / 2;
+        for (int i = 0; i < line.size(); i++) {
+            double x0 = left + offsets.get(i) * scale;
+            for (double[] stroke : line.get(i).strokes) {
+                path.getElements().add(new MoveTo(x0 + stroke[0] * scale, baseline - stroke[1] * scale));
+                for (int p = 2; p < stroke.length; p += 2) {
+                    path.getElements().add(new LineTo(x0 + stroke[p] * scale, baseline - stroke[p + 1] * scale));
+                }
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Polylines of one character starting at x = 0, with the horizontal
+     * extent of the strokes in every band for kerning.
+     */
+    private static class Glyph {
+
+        private final List<double[]> strokes = new ArrayList<>();
+        private final double[] bandMin = new double[BANDS];
+        private final double[] bandMax = new double[BANDS];
+        private final double width;
+
+        Glyph(String definition) {
+            for (String stroke : definition.split(";")) {
+                strokes.add(parseStroke(stroke.trim()));
+            }
+            double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+            for (double[] stroke : strokes) {
+                for (int p = 0; p < stroke.length; p += 2) {
+                    minX = Math.min(minX, stroke[p]);
+                    maxX = Math.max(maxX, stroke[p]);
+                }
+            }
+            for (double[] stroke : strokes) {
+                for (int p = 0; p < stroke.length; p += 2) {
+                    stroke[p] -= minX;
+                }
+            }
+            width = maxX - minX;
+            Arrays.fill(bandMin, Double.POSITIVE_INFINITY);
+            Arrays.fill(bandMax, Double.NEGATIVE_INFINITY);
+            for (double[] stroke : strokes) {
+                for (int p = 2; p < stroke.length; p += 2) {
+                    addToBands(stroke[p - 2], stroke[p - 1], stroke[p], stroke[p + 1]);
+                }
+            }
+        }
+
+        private void addToBands(double x1, double y1, double x2, double y2) {
+            int samples = (int) Math.ceil(Math.hypot(x2 - x1, y2 - y1) / (BAND_HEIGHT / 4)) + 1;
+            for (int i = 0; i <= samples; i++) {
+                double x = x1 + (x2 - x1) * i / samples;
+                double y = y1 + (y2 - y1) * i / samples;
+                int band = Math.min(BANDS - 1, Math.max(0, (int) ((y + DESCENT) / BAND_HEIGHT)));
+                bandMin[band] = Math.min(bandMin[band], x);
+                bandMax[band] = Math.max(bandMax[band], x);
+            }
+        }
+
+        /**
+         * Offset of the next glyph from this one, so that the closest 
+         * strokes of the two are one stroke gap apart, comparing each band 
+         * of the next glyph with the neighbouring bands of this one.
+         */
+        double kern(Glyph next) {
+            double offset = Double.NEGATIVE_INFINITY;
+            for (int band = 0; band < BANDS; band++) {
+                if (next.bandMin[band] == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                for (int b = Math.max(0, band - 1); b <= Math.min(BANDS - 1, band + 1); b++) {
+                    offset = Math.max(offset, bandMax[b] - next.bandMin[band]);
+                }
+            }
+            return offset == Double.NEGATIVE_INFINITY ? width + GAP : offset + GAP;
+        }
+    }
+
+    private static double[] parseStroke(String stroke) {
+        List<Double> points = new ArrayList<>();
+        for (String token : stroke.split("\\s+")) {
+            if (token.startsWith("a:")) {
+                String[] v = token.substring(2).split(",");
+                double cx = Double.parseDouble(v[0]);
+                double cy = Double.parseDouble(v[1]);
+                double rx = Double.parseDouble(v[2]);
+                double ry = v.length == 6 ? Double.parseDouble(v[3]) : rx;
+                double from = Math.toRadians(Double.parseDouble(v[v.length - 2]));
+                double to = Math.toRadians(Double.parseDouble(v[v.length - 1]));
+                int steps = (int) Math.ceil(Math.abs(to - from) / ARC_STEP);
+                for (int i = 0; i <= steps; i++) {
+                    double a = from + (to - from) * i / steps;
+                    addPoint(points, cx + rx * Math.cos(a), cy + ry * Math.sin(a));
+                }
+            } else {
+                String[] v = token.split(",");
+                addPoint(points, Double.parseDouble(v[0]), Double.parseDouble(v[1]));
+            }
+        }
+        double[] result = new double[points.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = points.get(i);
+        }
+        return result;
+    }
+
+    private static void addPoint(List<Double> points, double x, double y) {
+        int size = points.size();
+        if (size >= 2 && Math.abs(points.get(size - 2) - x) < 1e-9 
+                && Math.abs(points.get(size - 1) - y) < 1e-9) {
+            return;
+        }
+        points.add(x);
+        points.add(y);
+    }
+}